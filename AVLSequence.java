@@ -0,0 +1,441 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Implementation of an indexed sequence as an implicit-key AVL tree (a rope)
+ * 	An alternative to MyLinkedList for large sequences edited in the middle
+ * 	Nodes are ordered by position rather than by key:
+ * 		each node keeps the size of its subtree, and the index of a node
+ * 		is the size of everything to its left
+ * 	Rebalancing uses the same height and rotation rules as AVLTree,
+ * 	with rotations also maintaining subtree sizes
+ * 	access by index is done in O[log (N)]
+ * 	insertion and deletion at any index are done in O[log (N)]
+ * 	split at an index and concatenation are done in O[log (N)]
+ */
+
+/**
+ * @author Jin Zhe
+ */
+class AVLSequence <E> implements Iterable<E> {
+	private Node root;
+
+	/**
+	 * constructor: create an empty sequence
+	 */
+	public AVLSequence() {
+		root = null;
+	}
+
+	private AVLSequence(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Returns the item at index i
+	 */
+	public E get(int i) {
+		return nodeAt(i).value;
+	}
+
+	/**
+	 * Replaces the item at index i
+	 * @return the item previously at index i
+	 */
+	public E set(int i, E value) {
+		Node node = nodeAt(i);
+		E old = node.value;
+		node.value = value;
+		return old;
+	}
+
+	/**
+	 * Finds the node at index i by descending on subtree sizes
+	 */
+	private Node nodeAt(int i) {
+		checkIndex(i, size());
+		Node node = root;
+		while (true) {
+			int leftSize = size(node.leftChild);
+			if (i < leftSize) {
+				node = node.leftChild;
+			}
+			else if (i > leftSize) {
+				i -= leftSize + 1;
+				node = node.rightChild;
+			}
+			else {
+				return node;
+			}
+		}
+	}
+
+	/**
+	 * Appends an item to the end of the sequence
+	 */
+	public void add(E value) {
+		insert(size(), value);
+	}
+
+	/**
+	 * Inserts an item so that it ends up at index i, shifting later items right
+	 */
+	public void insert(int i, E value) {
+		checkIndex(i, size() + 1);
+		root = insert(root, i, new Node(value));
+	}
+
+	/**
+	 * Recursively inserts a node at index i of the subtree
+	 * @return updated root node of resulting subtree
+	 */
+	private Node insert(Node node, int i, Node newNode) {
+		/* base case: if subtree is empty, the new node is the subtree */
+		if (node == null) {
+			return newNode;
+		}
+		int leftSize = size(node.leftChild);
+		if (i <= leftSize) {
+			node.leftChild = insert(node.leftChild, i, newNode);
+		}
+		else {
+			node.rightChild = insert(node.rightChild, i - leftSize - 1, newNode);
+		}
+		update(node);
+		return balance(node);
+	}
+
+	/**
+	 * Removes the item at index i, shifting later items left
+	 * @return the removed item
+	 */
+	public E remove(int i) {
+		Node node = nodeAt(i);	// also checks the index
+		root = remove(root, i);
+		return node.value;
+	}
+
+	/**
+	 * Recursively removes the node at index i of the subtree
+	 * @return updated root node of resulting subtree
+	 */
+	private Node remove(Node node, int i) {
+		int leftSize = size(node.leftChild);
+		if (i < leftSize) {
+			node.leftChild = remove(node.leftChild, i);
+		}
+		else if (i > leftSize) {
+			node.rightChild = remove(node.rightChild, i - leftSize - 1);
+		}
+		else {
+			/* at most one child: replace node by it */
+			if (node.leftChild == null) {
+				return node.rightChild;
+			}
+			if (node.rightChild == null) {
+				return node.leftChild;
+			}
+			/* else replace node by its successor */
+			Node successor = node.rightChild;
+			while (successor.leftChild != null) {
+				successor = successor.leftChild;
+			}
+			successor.rightChild = remove(node.rightChild, 0);
+			successor.leftChild = node.leftChild;
+			node = successor;
+		}
+		update(node);
+		return balance(node);
+	}
+
+	/**
+	 * Splits the sequence at index i
+	 * This sequence keeps the items before i, the items from i onwards are moved out
+	 * @return a new sequence holding the items from index i onwards
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public AVLSequence<E> split(int i) {
+		checkIndex(i, size() + 1);
+		Node[] parts = new AVLSequence.Node[2];
+		split(root, i, parts);
+		root = parts[0];
+		return new AVLSequence<E>(parts[1]);
+	}
+
+	/**
+	 * Recursively splits the subtree into its first i items and the rest
+	 * @param parts	receives the two resulting subtrees
+	 */
+	private void split(Node node, int i, Node[] parts) {
+		/* base case: nothing to split */
+		if (node == null) {
+			parts[0] = parts[1] = null;
+			return;
+		}
+		Node left = node.leftChild;
+		Node right = node.rightChild;
+		int leftSize = size(left);
+		if (i <= leftSize) {
+			/* split point in left subtree: node and right subtree go to the rest */
+			split(left, i, parts);
+			parts[1] = join(parts[1], node, right);
+		}
+		else {
+			/* split point in right subtree: left subtree and node go to the first part */
+			split(right, i - leftSize - 1, parts);
+			parts[0] = join(left, node, parts[0]);
+		}
+	}
+
+	/**
+	 * Appends all items of other to this sequence, leaving other empty
+	 */
+	public void concat(AVLSequence<E> other) {
+		if (other == this) {
+			throw new IllegalArgumentException("cannot concatenate a sequence with itself");
+		}
+		if (other.root == null) {
+			return;
+		}
+		if (root == null) {
+			root = other.root;
+		}
+		else {
+			/* take the first item of other as the joining node */
+			Node first = other.nodeAt(0);
+			Node rest = other.remove(other.root, 0);
+			root = join(root, first, rest);
+		}
+		other.root = null;
+	}
+
+	/**
+	 * Joins two subtrees with a middle node, all items of left preceding middle and right
+	 * O[|height(left) - height(right)|]: descends the taller side to a subtree of
+	 * matching height, links there and rebalances on the way back up
+	 * @return root of the joined subtree
+	 */
+	private Node join(Node left, Node middle, Node right) {
+		if (height(left) > height(right) + 1) {
+			left.rightChild = join(left.rightChild, middle, right);
+			update(left);
+			return balance(left);
+		}
+		if (height(right) > height(left) + 1) {
+			right.leftChild = join(left, middle, right.leftChild);
+			update(right);
+			return balance(right);
+		}
+		middle.leftChild = left;
+		middle.rightChild = right;
+		update(middle);
+		return middle;
+	}
+
+	/**
+	 * Recomputes height and subtree size of node from its children
+	 */
+	private void update(Node node) {
+		node.height = Math.max(height(node.leftChild), height(node.rightChild)) + 1;
+		node.size = size(node.leftChild) + size(node.rightChild) + 1;
+	}
+
+	/**
+	 *  Balances the subtree via rotations
+	 *  Constant time operation
+	 */
+	private Node balance(Node node) {
+		int balanceFactor = getBalanceFactor(node);
+		if (balanceFactor >= 2) {
+			if (getBalanceFactor(node.leftChild) < 0) {		// LR case
+				node.leftChild = rotateLeft(node.leftChild);
+			}
+			return rotateRight(node);						// LL case
+		}
+		else if (balanceFactor <= -2) {
+			if (getBalanceFactor(node.rightChild) > 0) {	// RL case
+				node.rightChild = rotateRight(node.rightChild);
+			}
+			return rotateLeft(node);						// RR case
+		}
+		/* else no re-balancing is needed */
+		return node;
+	}
+
+	/**
+	 * Returns the balance factor of the subtree
+	 */
+	private int getBalanceFactor(Node node) {
+		return (node == null)? 0: height(node.leftChild) - height(node.rightChild);
+	}
+
+	/**
+	 * Left rotate the given subtree and return the new root
+	 * Constant time operation
+	 */
+	private Node rotateLeft(Node node) {
+		Node temp = node.rightChild;
+		node.rightChild = temp.leftChild;
+		temp.leftChild = node;
+		update(node);
+		update(temp);
+		return temp;
+	}
+
+	/**
+	 * Right rotate the given subtree and return the new root
+	 * Constant time operation
+	 */
+	private Node rotateRight(Node node) {
+		Node temp = node.leftChild;
+		node.leftChild = temp.rightChild;
+		temp.rightChild = node;
+		update(node);
+		update(temp);
+		return temp;
+	}
+
+	private int height(Node node) {
+		return (node == null)? 0: node.height;
+	}
+
+	private int size(Node node) {
+		return (node == null)? 0: node.size;
+	}
+
+	private static void checkIndex(int i, int bound) {
+		if (i < 0 || i >= bound) {
+			throw new IndexOutOfBoundsException("index " + i + ", bound " + bound);
+		}
+	}
+
+	/**
+	 * Returns number of items
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * Returns true if sequence is empty, else false
+	 */
+	public boolean isEmpty() {
+		return (root == null);
+	}
+
+	/**
+	 * Returns height of the underlying tree
+	 */
+	public int getHeight() {
+		return height(root);
+	}
+
+	/**
+	 * Iterator in sequence order, using an explicit stack sized by the tree height
+	 */
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			private final Node[] stack = new AVLSequence.Node[height(root)];
+			private int depth = 0;
+			{
+				pushLeftSpine(root);
+			}
+
+			public boolean hasNext() {
+				return depth > 0;
+			}
+
+			public E next() {
+				if (depth == 0) {
+					throw new NoSuchElementException();
+				}
+				Node node = stack[--depth];
+				stack[depth] = null;
+				pushLeftSpine(node.rightChild);
+				return node.value;
+			}
+
+			private void pushLeftSpine(Node node) {
+				for (; node != null; node = node.leftChild) {
+					stack[depth++] = node;
+				}
+			}
+		};
+	}
+
+	/**
+	 * String representation in sequence order, e.g. "[a, b, c]"
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (E value: this) {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			sb.append(value);
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * Node class
+	 */
+	private class Node {
+		protected E value;
+		protected Node leftChild, rightChild;
+		protected int height;	// height of subtree with node as root
+		protected int size;		// number of nodes in subtree with node as root
+
+		public Node(E value) {
+			this.value = value;
+			this.height = 1;
+			this.size = 1;
+		}
+	}
+
+	/**
+	 * Main method to test the data structure
+	 */
+	public static void main(String[] args) {
+		AVLSequence<String> sequence = new AVLSequence<String>();
+		for (String s: new String[] {"a", "b", "c", "d", "e", "f"}) {
+			sequence.add(s);
+		}
+		sequence.insert(3, "X");
+		System.out.println("After insert(3, X): " + sequence);
+		System.out.println("remove(0): " + sequence.remove(0) + ", get(2): " + sequence.get(2));
+		AVLSequence<String> tail = sequence.split(3);
+		System.out.println("split(3): " + sequence + " " + tail);
+		tail.concat(sequence);
+		System.out.println("tail.concat(head): " + tail);
+
+		/* mid-list edits on a large sequence */
+		int n = 10000000;
+		AVLSequence<Integer> large = new AVLSequence<Integer>();
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			large.add(i);
+		}
+		long built = System.nanoTime();
+		java.util.Random random = new java.util.Random(1);
+		int edits = 1000000;
+		for (int i = 0; i < edits; i++) {
+			int index = random.nextInt(large.size());
+			if (i % 2 == 0) {
+				large.insert(index, -i);
+			}
+			else {
+				large.remove(index);
+			}
+		}
+		long edited = System.nanoTime();
+		AVLSequence<Integer> half = large.split(n / 2);
+		half.concat(large);
+		long end = System.nanoTime();
+		System.out.printf("%d items: built in %d ms, %d random mid edits in %d ms (%.0f ns/edit), "
+				+ "split + concat in %d us, height %d%n", n, (built - start) / 1000000, edits,
+				(edited - built) / 1000000, (edited - built) / (double) edits,
+				(end - edited) / 1000, half.getHeight());
+	}
+}
@@ -1,4 +1,13 @@
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
  * Implementation of the AVL tree
@@ -11,13 +20,19 @@ import java.util.LinkedList;
  * 		In-order traversal
  * 		Post-order traversal
  * 		Level-order traversal
+ * 	each available as print method, forEach method and iterator, none of which
+ * 	recurse or allocate per visited node
+ * 	In-order traversal is also available as a splittable Spliterator for parallel streams
  */
 
 /**
  * @author Jin Zhe
  */
-class AVLTree <T extends Comparable<T>>{
+class AVLTree <T extends Comparable<T>> implements Iterable<T> {
 	private TreeNode root;
+	private int size;			// number of data in tree
+	private Metrics metrics;	// null unless instrumentation is enabled
+	private BloomFilter filter;	// null unless contains is filtered
 	/**
 	 * constructor: create an empty tree
 	 */
@@ -29,7 +44,14 @@ class AVLTree <T extends Comparable<T>>{
 	 * search binary tree for given data
 	 */
 	public boolean contains(T data) {
-		return contains(root, data);
+		if (metrics != null) metrics.recordOperation();
+		/* a filter rejects most absent data without descending the tree */
+		if (filter != null && !filter.mightContain(data)) {
+			return false;
+		}
+		boolean found = contains(root, data);
+		if (!found && filter != null) filter.recordFalsePositive();
+		return found;
 	}
 	public boolean contains(TreeNode node, T data) {
 		/* base case: when we have found data */
@@ -56,6 +78,8 @@ class AVLTree <T extends Comparable<T>>{
 	 * Inserts a data in the AVL tree
 	 */
 	public void insert(T data) {
+		if (metrics != null) metrics.recordOperation();
+		size++;
 		TreeNode node = new TreeNode(data);
 		/* if AVL tree is empty, assign to root node */
 		if (isEmpty()) {
@@ -65,6 +89,12 @@ class AVLTree <T extends Comparable<T>>{
 		else {
 			root = insert(root, data);
 		}
+		if (filter != null) {
+			filter.add(data);
+			if (size > filter.expectedInsertions()) {
+				rebuildFilter(filter.falsePositiveRate());	// outgrown: resize to keep its rate
+			}
+		}
 	}
 
 	/**
@@ -165,6 +195,7 @@ class AVLTree <T extends Comparable<T>>{
 	 * Constant time operation
 	 */
 	public TreeNode rotateLeft(TreeNode node) {
+		if (metrics != null) metrics.recordRotation();
 		/* rotation steps */
 		TreeNode temp = node.rightChild;
 		temp.parent = node.parent;
@@ -194,6 +225,7 @@ class AVLTree <T extends Comparable<T>>{
 	 * Constant time operation
 	 */
 	public TreeNode rotateRight(TreeNode node) {
+		if (metrics != null) metrics.recordRotation();
 		/* rotation steps */
 		TreeNode temp = node.leftChild;
 		temp.parent = node.parent;
@@ -234,10 +266,10 @@ class AVLTree <T extends Comparable<T>>{
 
 	/**
 	 * Returns weight
-	 * O[N]
+	 * O[1] as the size is tracked
 	 */
 	public int getWeight() {
-		return getWeight(root);
+		return size;
 	}
 	public int getWeight(TreeNode node) {
 		if (node.isEmpty()) {
@@ -246,93 +278,537 @@ class AVLTree <T extends Comparable<T>>{
 		return getWeight(node.leftChild) + getWeight(node.rightChild) + 1;
 	}
 	/**
-	 * Preorder traversal
+	 * Enables instrumentation by attaching the given metrics, or disables it with null
 	 */
-	public void printPreorder() {
-		printInorder(root);
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
 	}
-	public void printPreorder(TreeNode node) {
-		System.out.print(node.data + ", ");
-		if (!node.leftChild.isEmpty()) {
-			printPreorder(node.leftChild);
+
+	/**
+	 * Reports the recorded metrics along with the current and ideal height
+	 * O[1] as the tree tracks its weight
+	 * @return report of the metrics, or null if instrumentation is disabled
+	 */
+	public Metrics.Report getMetricsReport() {
+		if (metrics == null) {
+			return null;
 		}
-		if (!node.rightChild.isEmpty()) {
-			printPreorder(node.rightChild);
+		if (isEmpty()) {
+			return metrics.report(0, 0, null);
 		}
+		return metrics.report(getHeight(), getWeight(), null);
 	}
-	
+
 	/**
-	 * Inorder traversal
+	 * Puts a Bloom filter in front of contains
+	 * Data must have hash codes consistent with compareTo, e.g. Integer or String
+	 * The filter is sized for twice the current weight and rebuilt at twice that
+	 * once outgrown, an O[N] cost amortised over the insertions
+	 * @param falsePositiveRate	target rate of absent data passing the filter
 	 */
-	public void printInorder() {
-		printInorder(root);
+	public void enableFilter(double falsePositiveRate) {
+		rebuildFilter(falsePositiveRate);
+	}
+
+	/**
+	 * Removes the filter in front of contains
+	 */
+	public void disableFilter() {
+		filter = null;
+	}
+
+	/**
+	 * Returns the filter in front of contains, for its counters, or null if disabled
+	 */
+	public BloomFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Replaces the filter by one sized for twice the weight, holding all data
+	 * O[N]
+	 */
+	private void rebuildFilter(double falsePositiveRate) {
+		BloomFilter rebuilt = new BloomFilter(Math.max(2 * size, 1024), falsePositiveRate);
+		forEachInorder(rebuilt::add);
+		if (filter != null) {
+			rebuilt.copyCounters(filter);
+		}
+		filter = rebuilt;
 	}
-	public void printInorder(TreeNode node) {
-		if (!node.leftChild.isEmpty()) {
-			printInorder(node.leftChild);
+
+	/**
+	 * Freezes the data into an immutable index in Eytzinger layout, for lookups
+	 * once the tree is read-only; later insertions do not reach the index
+	 * O[N]
+	 */
+	public FrozenIndex<T> freeze() {
+		return new FrozenIndex<T>(toSortedList());
+	}
+
+	/**
+	 * Freezes a tree of longs into a primitive index
+	 * O[N]
+	 * @param blockSize	keys per delta-compressed block, 1 for no compression
+	 */
+	public static FrozenIndex.OfLong freezeLongs(AVLTree<Long> tree, int blockSize) {
+		return new FrozenIndex.OfLong(tree, blockSize);
+	}
+
+	/**
+	 * Returns the data of the tree in sorted order
+	 * O[N]
+	 */
+	ArrayList<T> toSortedList() {
+		ArrayList<T> list = new ArrayList<T>(size);
+		forEachInorder(list::add);
+		return list;
+	}
+
+	/**
+	 * Replaces the contents of the tree with data that is already sorted
+	 * Builds a perfectly balanced tree in O[N], no comparisons or rotations needed
+	 */
+	void buildFromSorted(List<T> sorted) {
+		root = sorted.isEmpty()? null: buildFromSorted(sorted, 0, sorted.size() - 1);
+		size = sorted.size();
+		if (filter != null) {
+			rebuildFilter(filter.falsePositiveRate());
 		}
-		System.out.print(node.data + ", ");
-		if (!node.rightChild.isEmpty()) {
-			printInorder(node.rightChild);
+	}
+	private TreeNode buildFromSorted(List<T> sorted, int low, int high) {
+		/* base case: empty range becomes an empty placeholder node */
+		if (low > high) {
+			return new TreeNode();
 		}
+		int mid = (low + high) >>> 1;
+		TreeNode node = new TreeNode(sorted.get(mid));
+		node.leftChild = buildFromSorted(sorted, low, mid - 1);
+		node.leftChild.parent = node;
+		node.rightChild = buildFromSorted(sorted, mid + 1, high);
+		node.rightChild.parent = node;
+		node.height = Math.max(node.leftChild.height,
+							   node.rightChild.height) + 1;
+		return node;
+	}
+
+	/**
+	 * Preorder traversal
+	 */
+	public void printPreorder() {
+		forEachPreorder(data -> System.out.print(data + ", "));
+	}
+	
+	/**
+	 * Inorder traversal
+	 */
+	public void printInorder() {
+		forEachInorder(data -> System.out.print(data + ", "));
 	}
 	
 	/**
 	 * Postorder traversal
 	 */
 	public void printPostorder() {
-		printInorder(root);
+		forEachPostorder(data -> System.out.print(data + ", "));
+	}
+	
+	/**
+	 * Levelorder traversal
+	 * prints the binary tree level order using BFS, empty subtrees are printed as null
+	 */
+	public void printLevelorder() {
+		if (isEmpty()) {
+			System.out.println();
+			return;
+		}
+		ArrayDeque<TreeNode> queue = new ArrayDeque<TreeNode>();	// queue for BFS
+		queue.offer(root);
+		for (int level = 0; level < root.height; level++) {
+			/* the queue holds exactly the nodes of the current level */
+			for (int i = queue.size(); i > 0; i--) {
+				TreeNode node = queue.poll();
+				System.out.print(node.data + " ");
+				if (!node.isEmpty() && level + 1 < root.height) {
+					queue.offer(node.leftChild);
+					queue.offer(node.rightChild);
+				}
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Visits data in pre-order, without recursion
+	 */
+	public void forEachPreorder(Consumer<? super T> action) {
+		for (Iterator<T> iterator = preorderIterator(); iterator.hasNext();) {
+			action.accept(iterator.next());
+		}
 	}
-	public void printPostorder(TreeNode node) {
-		if (!node.leftChild.isEmpty()) {
-			printPostorder(node.leftChild);
+
+	/**
+	 * Visits data in in-order (sorted order), without recursion
+	 */
+	public void forEachInorder(Consumer<? super T> action) {
+		for (Iterator<T> iterator = inorderIterator(); iterator.hasNext();) {
+			action.accept(iterator.next());
 		}
+	}
+
+	/**
+	 * Visits data in post-order, without recursion
+	 */
+	public void forEachPostorder(Consumer<? super T> action) {
+		for (Iterator<T> iterator = postorderIterator(); iterator.hasNext();) {
+			action.accept(iterator.next());
+		}
+	}
+
+	/**
+	 * Visits data in level-order, without recursion
+	 */
+	public void forEachLevelorder(Consumer<? super T> action) {
+		for (Iterator<T> iterator = levelorderIterator(); iterator.hasNext();) {
+			action.accept(iterator.next());
+		}
+	}
+
+	/**
+	 * Visits data in sorted order
+	 */
+	public void forEach(Consumer<? super T> action) {
+		forEachInorder(action);
+	}
+
+	/**
+	 * Returns an in-order iterator, so that the tree can be used in for-each loops
+	 */
+	public Iterator<T> iterator() {
+		return inorderIterator();
+	}
+
+	/**
+	 * Pre-order iterator
+	 * The explicit stack only holds pending right subtrees, at most one per level
+	 */
+	public Iterator<T> preorderIterator() {
+		return new TraversalIterator() {
+			private TreeNode next = isEmpty()? null: root;
+
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			public T next() {
+				TreeNode node = next;
+				if (node == null) {
+					throw new NoSuchElementException();
+				}
+				/* go left if possible, remembering the right subtree for later */
+				if (!node.leftChild.isEmpty()) {
+					if (!node.rightChild.isEmpty()) {
+						push(node.rightChild);
+					}
+					next = node.leftChild;
+				}
+				else if (!node.rightChild.isEmpty()) {
+					next = node.rightChild;
+				}
+				else {
+					next = pop();
+				}
+				return node.data;
+			}
+		};
+	}
+
+	/**
+	 * In-order iterator
+	 * The explicit stack holds the path of nodes whose right subtree is pending
+	 */
+	public Iterator<T> inorderIterator() {
+		return new TraversalIterator() {
+			{
+				if (!isEmpty()) {
+					pushLeftSpine(root);
+				}
+			}
+
+			public boolean hasNext() {
+				return depth > 0;
+			}
+
+			public T next() {
+				TreeNode node = pop();
+				if (node == null) {
+					throw new NoSuchElementException();
+				}
+				if (!node.rightChild.isEmpty()) {
+					pushLeftSpine(node.rightChild);
+				}
+				return node.data;
+			}
+
+			private void pushLeftSpine(TreeNode node) {
+				for (; !node.isEmpty(); node = node.leftChild) {
+					push(node);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Post-order iterator
+	 * The explicit stack holds the path from the root to the next node to visit
+	 */
+	public Iterator<T> postorderIterator() {
+		return new TraversalIterator() {
+			{
+				if (!isEmpty()) {
+					pushFirstLeafPath(root);
+				}
+			}
+
+			public boolean hasNext() {
+				return depth > 0;
+			}
+
+			public T next() {
+				TreeNode node = pop();
+				if (node == null) {
+					throw new NoSuchElementException();
+				}
+				/* coming up from a left child: the right subtree goes next */
+				if (depth > 0) {
+					TreeNode parent = peek();
+					if (parent.leftChild == node && !parent.rightChild.isEmpty()) {
+						pushFirstLeafPath(parent.rightChild);
+					}
+				}
+				return node.data;
+			}
+
+			/**
+			 * Pushes the path down to the first leaf in post-order, preferring left
+			 */
+			private void pushFirstLeafPath(TreeNode node) {
+				while (true) {
+					push(node);
+					if (!node.leftChild.isEmpty()) {
+						node = node.leftChild;
+					}
+					else if (!node.rightChild.isEmpty()) {
+						node = node.rightChild;
+					}
+					else {
+						return;
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Level-order iterator
+	 * Uses one array-backed queue, which grows to the width of the widest level
+	 */
+	public Iterator<T> levelorderIterator() {
+		return new Iterator<T>() {
+			private final ArrayDeque<TreeNode> queue = new ArrayDeque<TreeNode>();
+			{
+				if (!isEmpty()) {
+					queue.offer(root);
+				}
+			}
+
+			public boolean hasNext() {
+				return !queue.isEmpty();
+			}
+
+			public T next() {
+				TreeNode node = queue.poll();
+				if (node == null) {
+					throw new NoSuchElementException();
+				}
+				if (!node.leftChild.isEmpty()) {
+					queue.offer(node.leftChild);
+				}
+				if (!node.rightChild.isEmpty()) {
+					queue.offer(node.rightChild);
+				}
+				return node.data;
+			}
+		};
+	}
+
+	/**
+	 * Splittable in-order spliterator for (parallel) streams
+	 * Walks in-order successors through parent links, so it needs no stack at all
+	 */
+	public Spliterator<T> spliterator() {
+		return new InorderSpliterator(null, null, 0, size);
+	}
+
+	/**
+	 * @return sequential stream of the data in sorted order
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * @return parallel stream of the data, splitting the tree at subtree roots
+	 */
+	public Stream<T> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * Returns the in-order successor of node, or null if it is the last node
+	 */
+	private TreeNode successor(TreeNode node) {
+		/* leftmost node of right subtree */
 		if (!node.rightChild.isEmpty()) {
-			printPostorder(node.rightChild);
+			node = node.rightChild;
+			while (!node.leftChild.isEmpty()) {
+				node = node.leftChild;
+			}
+			return node;
+		}
+		/* else first ancestor reached from its left subtree */
+		TreeNode parent = node.parent;
+		while (!parent.isEmpty() && node == parent.rightChild) {
+			node = parent;
+			parent = parent.parent;
 		}
-		System.out.print(node.data + ", ");
+		return parent.isEmpty()? null: parent;
 	}
-	
+
 	/**
-	 * Levelorder traversal
-	 * prints the binary tree level order using BFS
+	 * Returns the leftmost node of the tree, or null if empty
 	 */
-	public void printLevelorder() {
-		LinkedList<Pair<TreeNode, Integer>> queue =
-				new LinkedList<Pair<TreeNode, Integer>>();	// queue for BFS
-		Integer level = 0;	// level starts at root node's height
-		queue.offer(new Pair<TreeNode, Integer>(root, level));
-		while (!queue.isEmpty()) {
-			Pair<TreeNode, Integer> item = queue.poll();
-			TreeNode node = item.first;
-			Integer currentLevel = item.second;
-			// if advancing to new level
-			if (currentLevel != level) {
-				System.out.println();
-				level = currentLevel;
-			}
-			System.out.print(node.data + " ");
-			if (!node.isEmpty() && currentLevel + 1 < root.height) {
-				queue.offer(new Pair<TreeNode, Integer>(node.leftChild,
-														currentLevel + 1));
-				queue.offer(new Pair<TreeNode, Integer>(node.rightChild,
-														currentLevel + 1));
-			}
-		}
-		System.out.println();
+	private TreeNode firstNode() {
+		if (isEmpty()) {
+			return null;
+		}
+		TreeNode node = root;
+		while (!node.leftChild.isEmpty()) {
+			node = node.leftChild;
+		}
+		return node;
 	}
-	
+
 	/**
-	 * Pair class
-	 * @param <K>	Type of key
-	 * @param <V>	Type for value
+	 * Base class of the stack based iterators
+	 * The stack is one array sized by the tree height, so no allocation happens per node
 	 */
-	private class Pair <K, V> {
-		K first;
-		V second;
-		public Pair(K first, V second) {
-			this.first = first;
-			this.second = second;
+	private abstract class TraversalIterator implements Iterator<T> {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final TreeNode[] stack =
+				new AVLTree.TreeNode[isEmpty()? 0: root.height];
+		protected int depth = 0;	// number of nodes on the stack
+
+		protected void push(TreeNode node) {
+			stack[depth++] = node;
+		}
+
+		protected TreeNode pop() {
+			if (depth == 0) {
+				return null;
+			}
+			TreeNode node = stack[--depth];
+			stack[depth] = null;
+			return node;
+		}
+
+		protected TreeNode peek() {
+			return stack[depth - 1];
+		}
+	}
+
+	/**
+	 * In-order spliterator over the range [current, fence) of nodes
+	 * Splits at the root of the remaining range, the same way java.util.TreeMap does:
+	 * 	side == 0: covers the whole tree, splits at the root
+	 * 	side > 0:  is a right part, splits at the right child of current
+	 * 	side < 0:  is a left part, splits at the left child of fence
+	 */
+	private class InorderSpliterator implements Spliterator<T> {
+		private TreeNode current;	// next node to visit, null once past the end of tree
+		private TreeNode fence;		// first node after the range, null for end of tree
+		private int side;
+		private int estimate;		// exact remaining count while side == 0 (SIZED)
+		private boolean started;	// the whole-tree spliterator finds its first node lazily
+
+		InorderSpliterator(TreeNode current, TreeNode fence, int side, int estimate) {
+			this.current = current;
+			this.fence = fence;
+			this.side = side;
+			this.estimate = estimate;
+			this.started = (side != 0);
+		}
+
+		private TreeNode start() {
+			if (!started) {
+				current = firstNode();
+				started = true;
+			}
+			return current;
+		}
+
+		public Spliterator<T> trySplit() {
+			TreeNode first = start();
+			if (first == null || first == fence) {
+				return null;
+			}
+			TreeNode split = (side == 0)? root:
+							 (side > 0)? (first.rightChild.isEmpty()? null: first.rightChild):
+							 (fence != null && !fence.leftChild.isEmpty())? fence.leftChild: null;
+			/* split only if strictly inside the range */
+			if (split != null && split != first && split != fence
+					&& first.data.compareTo(split.data) < 0) {
+				side = 1;
+				estimate >>>= 1;
+				InorderSpliterator prefix = new InorderSpliterator(first, split, -1, estimate);
+				current = split;
+				return prefix;
+			}
+			return null;
+		}
+
+		public boolean tryAdvance(Consumer<? super T> action) {
+			TreeNode node = start();
+			if (node == null || node == fence) {
+				return false;
+			}
+			current = successor(node);
+			if (estimate > 0) estimate--;	// keeps the whole-tree count exact
+			action.accept(node.data);
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super T> action) {
+			TreeNode node = start();
+			while (node != null && node != fence) {
+				action.accept(node.data);
+				node = successor(node);
+			}
+			current = fence;
+			estimate = 0;
+		}
+
+		public long estimateSize() {
+			return estimate;
+		}
+
+		public int characteristics() {
+			return ((side == 0)? Spliterator.SIZED: 0)
+					| Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL;
+		}
+
+		public Comparator<? super T> getComparator() {
+			return null;	// natural ordering
 		}
 	}
 	
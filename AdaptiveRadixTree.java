@@ -0,0 +1,595 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/*
+ * Implementation of the adaptive radix tree (ART) as a set of byte[] keys
+ * 	An alternative to AVLTree for long keys sharing prefixes, e.g. paths and URLs
+ * 	Keys are consumed one byte per level instead of being compared whole at every level:
+ * 		search and insertion are done in O[key length], independent of the number of keys
+ * 	Inner nodes adapt their layout to their number of children:
+ * 		Node4 and Node16:	sorted arrays of key bytes and children
+ * 		Node48:				256 byte index into 48 children
+ * 		Node256:			array of 256 children
+ * 	and store the bytes their only path shares (path compression), so chains of
+ * 	single-child nodes never exist
+ * 	A key ending at an inner node, being a prefix of other keys, is kept as the
+ * 	node's terminal leaf, which comes first in order
+ * 	Keys iterate in unsigned lexicographic byte order; for String keys, stored as
+ * 	UTF-8, this matches String.compareTo except around surrogate pairs
+ * 	deletion is currently NOT supported
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class AdaptiveRadixTree implements Iterable<byte[]> {
+	private Node root;
+	private int size;
+
+	/**
+	 * constructor: create an empty tree
+	 */
+	public AdaptiveRadixTree() {
+		root = null;
+	}
+
+	/**
+	 * search tree for the given key
+	 */
+	public boolean contains(String key) {
+		return contains(key.getBytes(StandardCharsets.UTF_8));
+	}
+	public boolean contains(byte[] key) {
+		Node node = root;
+		int depth = 0;
+		while (node != null) {
+			if (node instanceof Leaf) {
+				return Arrays.equals(((Leaf) node).key, key);
+			}
+			Inner inner = (Inner) node;
+			/* the compressed path must match entirely */
+			byte[] prefix = inner.prefix;
+			if (key.length - depth < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (prefix[i] != key[depth + i]) {
+					return false;
+				}
+			}
+			depth += prefix.length;
+			if (depth == key.length) {
+				return inner.terminal != null;
+			}
+			node = inner.find(key[depth++] & 0xFF);
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts a key, if not already present
+	 * @return true if the key was added
+	 */
+	public boolean insert(String key) {
+		return insert(key.getBytes(StandardCharsets.UTF_8));
+	}
+	public boolean insert(byte[] key) {
+		int before = size;
+		Leaf leaf = new Leaf(key.clone());
+		root = (root == null)? leaf: insert(root, leaf, 0);
+		if (root == leaf) {
+			size++;
+		}
+		return size > before;
+	}
+
+	/**
+	 * Inserts a list of keys
+	 */
+	public void insert(String[] keys) {
+		for (String key: keys) {
+			insert(key);
+		}
+	}
+
+	/**
+	 * Recursively inserts a leaf in the subtree whose path so far covers depth bytes
+	 * @return updated root node of resulting subtree
+	 */
+	private Node insert(Node node, Leaf leaf, int depth) {
+		byte[] key = leaf.key;
+		/* a leaf here: split it on the bytes both keys still share */
+		if (node instanceof Leaf) {
+			byte[] existing = ((Leaf) node).key;
+			if (Arrays.equals(existing, key)) {
+				return node;
+			}
+			int shared = depth;
+			while (shared < existing.length && shared < key.length && existing[shared] == key[shared]) {
+				shared++;
+			}
+			Inner split = new Node4(Arrays.copyOfRange(key, depth, shared));
+			split = attach(split, (Leaf) node, shared);
+			size++;
+			return attach(split, leaf, shared);
+		}
+		Inner inner = (Inner) node;
+		byte[] prefix = inner.prefix;
+		int matched = 0;
+		while (matched < prefix.length && depth + matched < key.length
+				&& prefix[matched] == key[depth + matched]) {
+			matched++;
+		}
+		/* the key leaves the compressed path: split the path where it does */
+		if (matched < prefix.length) {
+			Inner split = new Node4(Arrays.copyOf(prefix, matched));
+			inner.prefix = Arrays.copyOfRange(prefix, matched + 1, prefix.length);
+			split = split.add(prefix[matched] & 0xFF, inner);
+			size++;
+			return attach(split, leaf, depth + matched);
+		}
+		depth += prefix.length;
+		if (depth == key.length) {
+			if (inner.terminal == null) {
+				inner.terminal = leaf;
+				size++;
+			}
+			return inner;
+		}
+		int b = key[depth] & 0xFF;
+		Node child = inner.find(b);
+		if (child != null) {
+			inner.replace(b, insert(child, leaf, depth + 1));
+			return inner;
+		}
+		size++;
+		return inner.add(b, leaf);
+	}
+
+	/**
+	 * Hangs a leaf below an inner node whose path covers depth bytes of it
+	 * @return the node, or the larger node it grew into
+	 */
+	private static Inner attach(Inner node, Leaf leaf, int depth) {
+		if (depth == leaf.key.length) {
+			node.terminal = leaf;
+			return node;
+		}
+		return node.add(leaf.key[depth] & 0xFF, leaf);
+	}
+
+	/**
+	 * Returns number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if tree is empty, else false
+	 */
+	public boolean isEmpty() {
+		return (root == null);
+	}
+
+	/**
+	 * Iterator over all keys in order
+	 */
+	public Iterator<byte[]> iterator() {
+		return new OrderedIterator(root);
+	}
+
+	/**
+	 * Iterator over the keys starting with prefix, in order
+	 * Finding the first one costs O[prefix length]
+	 */
+	public Iterator<byte[]> prefixIterator(byte[] prefix) {
+		Node node = root;
+		int depth = 0;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			/* compare the compressed path as far as the prefix goes */
+			int length = Math.min(inner.prefix.length, prefix.length - depth);
+			for (int i = 0; i < length; i++) {
+				if (inner.prefix[i] != prefix[depth + i]) {
+					return new OrderedIterator(null);
+				}
+			}
+			depth += inner.prefix.length;
+			if (depth >= prefix.length) {
+				return new OrderedIterator(inner);	// everything below extends the prefix
+			}
+			node = inner.find(prefix[depth++] & 0xFF);
+			if (depth == prefix.length) {
+				return new OrderedIterator(node);
+			}
+		}
+		if (node != null) {
+			byte[] key = ((Leaf) node).key;
+			if (key.length < prefix.length
+					|| !Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length)) {
+				node = null;
+			}
+		}
+		return new OrderedIterator(node);
+	}
+
+	/**
+	 * Visits all keys in order, decoded as UTF-8
+	 */
+	public void forEachString(Consumer<String> action) {
+		for (byte[] key: this) {
+			action.accept(new String(key, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Visits the keys starting with prefix in order, decoded as UTF-8
+	 */
+	public void forEachWithPrefix(String prefix, Consumer<String> action) {
+		Iterator<byte[]> iterator = prefixIterator(prefix.getBytes(StandardCharsets.UTF_8));
+		while (iterator.hasNext()) {
+			action.accept(new String(iterator.next(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * In-order iterator over a subtree, using an explicit stack of inner nodes
+	 * each with the next child byte to visit (-1 while its terminal is pending)
+	 */
+	private static class OrderedIterator implements Iterator<byte[]> {
+		private Inner[] nodes = new Inner[16];
+		private int[] positions = new int[16];
+		private int depth = 0;
+		private byte[] next;
+
+		OrderedIterator(Node start) {
+			if (start instanceof Leaf) {
+				next = ((Leaf) start).key;
+			}
+			else if (start != null) {
+				push((Inner) start);
+				advance();
+			}
+		}
+
+		private void push(Inner node) {
+			if (depth == nodes.length) {
+				nodes = Arrays.copyOf(nodes, depth * 2);
+				positions = Arrays.copyOf(positions, depth * 2);
+			}
+			nodes[depth] = node;
+			positions[depth++] = -1;
+		}
+
+		/**
+		 * Moves next to the following key, or null at the end
+		 */
+		private void advance() {
+			while (depth > 0) {
+				Inner node = nodes[depth - 1];
+				int position = positions[depth - 1];
+				if (position == -1) {
+					positions[depth - 1] = 0;
+					if (node.terminal != null) {
+						next = node.terminal.key;
+						return;
+					}
+					continue;
+				}
+				int b = node.next(position);
+				if (b < 0) {
+					nodes[--depth] = null;
+					continue;
+				}
+				positions[depth - 1] = b + 1;
+				Node child = node.find(b);
+				if (child instanceof Leaf) {
+					next = ((Leaf) child).key;
+					return;
+				}
+				push((Inner) child);
+			}
+			next = null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public byte[] next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			byte[] key = next;
+			advance();
+			return key.clone();
+		}
+	}
+
+	/**
+	 * Node class, either a leaf holding a whole key or an inner node
+	 */
+	private abstract static class Node {
+	}
+
+	private static final class Leaf extends Node {
+		final byte[] key;
+
+		Leaf(byte[] key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Inner node, children being indexed by the byte following the compressed path
+	 */
+	private abstract static class Inner extends Node {
+		byte[] prefix;	// bytes shared by every key below, after the parent's child byte
+		Leaf terminal;	// key ending right after the prefix, if any
+		int count;		// number of children
+
+		Inner(byte[] prefix) {
+			this.prefix = prefix;
+		}
+
+		/**
+		 * Returns the child for byte b, or null
+		 */
+		abstract Node find(int b);
+
+		/**
+		 * Replaces the existing child for byte b
+		 */
+		abstract void replace(int b, Node child);
+
+		/**
+		 * Adds a child for a new byte b
+		 * @return this node, or the larger node it grew into when full
+		 */
+		abstract Inner add(int b, Node child);
+
+		/**
+		 * Returns the smallest child byte at least from, or -1 if there is none
+		 */
+		abstract int next(int from);
+
+		/**
+		 * Moves the path, terminal and children into the larger node
+		 */
+		Inner growInto(Inner larger) {
+			larger.prefix = prefix;
+			larger.terminal = terminal;
+			for (int b = next(0); b >= 0; b = next(b + 1)) {
+				larger.add(b, find(b));
+			}
+			return larger;
+		}
+	}
+
+	/**
+	 * Inner node keeping child bytes sorted, searched linearly
+	 */
+	private abstract static class SortedInner extends Inner {
+		final byte[] keys;
+		final Node[] children;
+
+		SortedInner(byte[] prefix, int capacity) {
+			super(prefix);
+			keys = new byte[capacity];
+			children = new Node[capacity];
+		}
+
+		abstract Inner grow();
+
+		Node find(int b) {
+			for (int i = 0; i < count; i++) {
+				if ((keys[i] & 0xFF) == b) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		void replace(int b, Node child) {
+			for (int i = 0; i < count; i++) {
+				if ((keys[i] & 0xFF) == b) {
+					children[i] = child;
+					return;
+				}
+			}
+		}
+
+		Inner add(int b, Node child) {
+			if (count == keys.length) {
+				return grow().add(b, child);
+			}
+			int i = count;
+			for (; i > 0 && (keys[i - 1] & 0xFF) > b; i--) {
+				keys[i] = keys[i - 1];
+				children[i] = children[i - 1];
+			}
+			keys[i] = (byte) b;
+			children[i] = child;
+			count++;
+			return this;
+		}
+
+		int next(int from) {
+			for (int i = 0; i < count; i++) {
+				if ((keys[i] & 0xFF) >= from) {
+					return keys[i] & 0xFF;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static final class Node4 extends SortedInner {
+		Node4(byte[] prefix) {
+			super(prefix, 4);
+		}
+
+		Inner grow() {
+			return growInto(new Node16(null));
+		}
+	}
+
+	private static final class Node16 extends SortedInner {
+		Node16(byte[] prefix) {
+			super(prefix, 16);
+		}
+
+		Inner grow() {
+			return growInto(new Node48(null));
+		}
+	}
+
+	private static final class Node48 extends Inner {
+		final byte[] index = new byte[256];	// slot + 1 of the child for each byte, 0 if none
+		final Node[] children = new Node[48];
+
+		Node48(byte[] prefix) {
+			super(prefix);
+		}
+
+		Node find(int b) {
+			int slot = index[b];
+			return (slot == 0)? null: children[slot - 1];
+		}
+
+		void replace(int b, Node child) {
+			children[index[b] - 1] = child;
+		}
+
+		Inner add(int b, Node child) {
+			if (count == children.length) {
+				return growInto(new Node256(null)).add(b, child);
+			}
+			children[count] = child;	// no deletion, so slots stay dense
+			index[b] = (byte) ++count;
+			return this;
+		}
+
+		int next(int from) {
+			for (int b = from; b < 256; b++) {
+				if (index[b] != 0) {
+					return b;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static final class Node256 extends Inner {
+		final Node[] children = new Node[256];
+
+		Node256(byte[] prefix) {
+			super(prefix);
+		}
+
+		Node find(int b) {
+			return children[b];
+		}
+
+		void replace(int b, Node child) {
+			children[b] = child;
+		}
+
+		Inner add(int b, Node child) {
+			children[b] = child;
+			count++;
+			return this;
+		}
+
+		int next(int from) {
+			for (int b = from; b < 256; b++) {
+				if (children[b] != null) {
+					return b;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Main method to test the data structure against AVLTree on URL-like keys
+	 */
+	public static void main(String[] args) {
+		AdaptiveRadixTree tree = new AdaptiveRadixTree();
+		tree.insert(new String[] {"romane", "romanus", "romulus", "rubens", "ruber", "rubicon",
+				"rubicundus", "rom", "r"});
+		System.out.print("In order: ");
+		tree.forEachString(key -> System.out.print(key + ", "));
+		System.out.print("\nStarting with \"rub\": ");
+		tree.forEachWithPrefix("rub", key -> System.out.print(key + ", "));
+		System.out.println("\ncontains \"rom\": " + tree.contains("rom") + ", \"ro\": "
+				+ tree.contains("ro") + ", \"rubicon\": " + tree.contains("rubicon"));
+
+		/* long shared-prefix keys */
+		int n = 1000000;
+		Random random = new Random(42);
+		String[] keys = new String[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = "https://www.example.com/api/v2/customers/" + random.nextInt(100000)
+					+ "/orders/" + random.nextInt(1000) + "/items";
+		}
+		String[] lookups = new String[n];
+		for (int i = 0; i < n; i++) {
+			lookups[i] = (i % 2 == 0)? keys[random.nextInt(n)]
+					: "https://www.example.com/api/v2/customers/" + random.nextInt(100000)
+							+ "/orders/" + (1000 + i % 1000) + "/items";
+		}
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			long used = usedMemory();
+			long start = System.nanoTime();
+			AdaptiveRadixTree art = new AdaptiveRadixTree();
+			art.insert(keys);
+			long built = System.nanoTime();
+			int hits = 0;
+			for (String key: lookups) {
+				if (art.contains(key)) hits++;
+			}
+			long end = System.nanoTime();
+			long artBytes = usedMemory() - used;
+			System.out.printf("AdaptiveRadixTree: insert %.0f ns, contains %.0f ns, hits %d, "
+					+ "~%d bytes/key%n", (built - start) / (double) n,
+					(end - built) / (double) n, hits, artBytes / art.size());
+			art = null;
+
+			used = usedMemory();
+			String[] copies = new String[n];	// counted with the tree, as ART holds its own copies
+			for (int i = 0; i < n; i++) {
+				copies[i] = new String(keys[i].toCharArray());
+			}
+			start = System.nanoTime();
+			AVLTree<String> avl = new AVLTree<String>();
+			for (String key: copies) {
+				if (!avl.isEmpty() && avl.contains(key)) continue;	// same set semantics
+				avl.insert(key);
+			}
+			built = System.nanoTime();
+			hits = 0;
+			for (String key: lookups) {
+				if (avl.contains(key)) hits++;
+			}
+			end = System.nanoTime();
+			long avlBytes = usedMemory() - used;
+			System.out.printf("AVLTree:           insert %.0f ns, contains %.0f ns, hits %d, "
+					+ "~%d bytes/key%n", (built - start) / (double) n,
+					(end - built) / (double) n, hits, avlBytes / avl.getWeight());
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
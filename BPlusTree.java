@@ -0,0 +1,366 @@
+import java.util.Random;
+import java.util.function.Consumer;
+
+/*
+ * Implementation of the B+ tree
+ * 	An ordered index with the same insert/contains API as AVLTree,
+ * 	laid out for cache efficiency rather than one object per key:
+ * 		every node packs up to (fanout - 1) keys in a single array
+ * 		internal nodes only hold separator keys
+ * 		all data lives in the leaves, which are linked for range scans
+ * 	Please note that it can only hold data of comparable types
+ * 	Duplicates are allowed, same as AVLTree
+ * 	insertion is done in O[log (N)]
+ * 	search is done in O[log (N)], touching only O[log_fanout (N)] nodes
+ * 	deletion is currently NOT supported
+ */
+
+/**
+ * @author Jin Zhe
+ */
+class BPlusTree <T extends Comparable<T>> {
+	private static final int DEFAULT_FANOUT = 64;
+
+	private final int maxKeys;	// keys a node may hold before it splits
+	private Node root;
+	private Leaf firstLeaf;		// head of the linked leaves
+	private int height;
+	private int size;
+
+	private Object splitKey;	// key promoted by the last split, see insert(Node, T)
+
+	/**
+	 * constructor: create an empty tree with the default fanout
+	 */
+	public BPlusTree() {
+		this(DEFAULT_FANOUT);
+	}
+
+	/**
+	 * constructor: create an empty tree
+	 * @param fanout	maximum number of children of an internal node, at least 3
+	 */
+	public BPlusTree(int fanout) {
+		if (fanout < 3) {
+			throw new IllegalArgumentException("fanout must be at least 3: " + fanout);
+		}
+		maxKeys = fanout - 1;
+		firstLeaf = new Leaf();
+		root = firstLeaf;
+		height = 1;
+		size = 0;
+	}
+
+	/**
+	 * search tree for given data
+	 */
+	public boolean contains(T data) {
+		Node node = root;
+		while (node instanceof Internal) {
+			Internal internal = (Internal) node;
+			node = internal.children[upperBound(internal, data)];
+		}
+		int i = upperBound(node, data) - 1;	// last key <= data
+		return i >= 0 && data.compareTo(key(node, i)) == 0;
+	}
+
+	/**
+	 * Inserts a data in the tree
+	 */
+	public void insert(T data) {
+		Node sibling = insert(root, data);
+		/* if the root was split, grow the tree by one level */
+		if (sibling != null) {
+			Internal newRoot = new Internal(maxKeys);
+			newRoot.keys[0] = splitKey;
+			newRoot.children[0] = root;
+			newRoot.children[1] = sibling;
+			newRoot.count = 1;
+			root = newRoot;
+			height++;
+		}
+		size++;
+	}
+
+	/**
+	 * Inserts a list of data values in the tree
+	 */
+	public void insert(T[] dataList) {
+		for (T data: dataList) {
+			insert(data);
+		}
+	}
+
+	/**
+	 * Recursively inserts data in the subtree
+	 * @return new right sibling if the node was split, with its separator in splitKey,
+	 * 		   else null
+	 */
+	private Node insert(Node node, T data) {
+		int i = upperBound(node, data);	// equal keys go right, same as AVLTree
+		/* base case: insert into leaf */
+		if (node instanceof Leaf) {
+			insertAt(node, i, data);
+			return (node.count > maxKeys)? splitLeaf((Leaf) node): null;
+		}
+		Internal internal = (Internal) node;
+		Node sibling = insert(internal.children[i], data);
+		if (sibling == null) {
+			return null;
+		}
+		/* child was split, add its separator and new sibling here */
+		System.arraycopy(internal.children, i + 1, internal.children, i + 2, internal.count - i);
+		internal.children[i + 1] = sibling;
+		insertAt(internal, i, splitKey);
+		return (internal.count > maxKeys)? splitInternal(internal): null;
+	}
+
+	/**
+	 * Shifts keys right and places key at index i
+	 */
+	private void insertAt(Node node, int i, Object key) {
+		System.arraycopy(node.keys, i, node.keys, i + 1, node.count - i);
+		node.keys[i] = key;
+		node.count++;
+	}
+
+	/**
+	 * Moves the upper half of an overflowing leaf into a new leaf
+	 * The first key of the new leaf is copied up as separator
+	 */
+	private Leaf splitLeaf(Leaf leaf) {
+		Leaf right = new Leaf();
+		int half = leaf.count / 2;
+		right.count = leaf.count - half;
+		System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+		java.util.Arrays.fill(leaf.keys, half, leaf.count, null);
+		leaf.count = half;
+		right.next = leaf.next;
+		leaf.next = right;
+		splitKey = right.keys[0];
+		return right;
+	}
+
+	/**
+	 * Moves the upper half of an overflowing internal node into a new node
+	 * The middle key is moved up as separator
+	 */
+	private Internal splitInternal(Internal node) {
+		Internal right = new Internal(maxKeys);
+		int mid = node.count / 2;
+		splitKey = node.keys[mid];
+		right.count = node.count - mid - 1;
+		System.arraycopy(node.keys, mid + 1, right.keys, 0, right.count);
+		System.arraycopy(node.children, mid + 1, right.children, 0, right.count + 1);
+		java.util.Arrays.fill(node.keys, mid, node.count, null);
+		java.util.Arrays.fill(node.children, mid + 1, node.count + 1, null);
+		node.count = mid;
+		return right;
+	}
+
+	/**
+	 * Binary search for the number of keys in node that are <= data
+	 */
+	private int upperBound(Node node, T data) {
+		int low = 0, high = node.count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (data.compareTo(key(node, mid)) >= 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T key(Node node, int i) {
+		return (T) node.keys[i];
+	}
+
+	/**
+	 * Returns true if tree is empty, else false
+	 */
+	public boolean isEmpty() {
+		return (size == 0);
+	}
+
+	/**
+	 * Returns height of tree, counted in nodes from root to leaf
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns weight
+	 * O[1] as the size is tracked
+	 */
+	public int getWeight() {
+		return size;
+	}
+
+	/**
+	 * Visits all data in sorted order by walking the linked leaves
+	 */
+	public void forEach(Consumer<? super T> action) {
+		for (Leaf leaf = firstLeaf; leaf != null; leaf = leaf.next) {
+			for (int i = 0; i < leaf.count; i++) {
+				action.accept(key(leaf, i));
+			}
+		}
+	}
+
+	/**
+	 * Range scan: visits all data in [low, high] in sorted order
+	 * O[log (N) + K] for K results
+	 */
+	public void forEachInRange(T low, T high, Consumer<? super T> action) {
+		/* descend to the leftmost leaf which may hold low */
+		Node node = root;
+		while (node instanceof Internal) {
+			Internal internal = (Internal) node;
+			node = internal.children[lowerBound(internal, low)];
+		}
+		Leaf leaf = (Leaf) node;
+		int i = lowerBound(leaf, low);
+		/* walk the linked leaves until past high */
+		while (leaf != null) {
+			for (; i < leaf.count; i++) {
+				T data = key(leaf, i);
+				if (data.compareTo(high) > 0) {
+					return;
+				}
+				action.accept(data);
+			}
+			leaf = leaf.next;
+			i = 0;
+		}
+	}
+
+	/**
+	 * Binary search for the number of keys in node that are < data
+	 */
+	private int lowerBound(Node node, T data) {
+		int low = 0, high = node.count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (data.compareTo(key(node, mid)) > 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Inorder traversal
+	 */
+	public void printInorder() {
+		forEach(data -> System.out.print(data + ", "));
+	}
+
+	/**
+	 * Node class, keys are packed in one array
+	 */
+	private abstract class Node {
+		protected Object[] keys;	// one slot of slack so a node can overflow before splitting
+		protected int count;		// number of keys in use
+	}
+
+	/**
+	 * Internal node: count keys separating count + 1 children
+	 */
+	private class Internal extends Node {
+		protected Node[] children;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public Internal(int maxKeys) {
+			keys = new Object[maxKeys + 1];
+			children = new BPlusTree.Node[maxKeys + 2];
+		}
+	}
+
+	/**
+	 * Leaf node: holds the data, linked to the next leaf in order
+	 */
+	private class Leaf extends Node {
+		protected Leaf next;
+
+		public Leaf() {
+			keys = new Object[maxKeys + 1];
+		}
+	}
+
+	/**
+	 * Main method to test the data structure and benchmark it against AVLTree
+	 * 	args[0]: number of keys (default 2,000,000)
+	 * 	args[1]: fanout (default 64)
+	 */
+	public static void main(String[] args) {
+		BPlusTree<Integer> small = new BPlusTree<Integer>(3);
+		small.insert(new Integer[] {5, 1, 9, 3, 7, 3, 8, 2, 6, 4});
+		System.out.print("Inorder: ");
+		small.printInorder();
+		System.out.print("\nRange [3, 6]: ");
+		small.forEachInRange(3, 6, data -> System.out.print(data + ", "));
+		System.out.println("\ncontains 7: " + small.contains(7) + ", contains 10: " + small.contains(10));
+
+		int n = (args.length > 0)? Integer.parseInt(args[0]): 2000000;
+		int fanout = (args.length > 1)? Integer.parseInt(args[1]): DEFAULT_FANOUT;
+		Integer[] keys = new Integer[n];
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++) {
+			keys[i] = random.nextInt();
+		}
+		Integer[] probes = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			probes[i] = (i % 2 == 0)? keys[random.nextInt(n)]: random.nextInt();	// half hits
+		}
+
+		long before = usedMemory();
+		AVLTree<Integer> avl = new AVLTree<Integer>();
+		avl.insert(keys);
+		long avlBytes = usedMemory() - before;
+		long avlNanos = timeLookups(probes, avl::contains);
+
+		before = usedMemory();
+		BPlusTree<Integer> bplus = new BPlusTree<Integer>(fanout);
+		bplus.insert(keys);
+		long bplusBytes = usedMemory() - before;
+		long bplusNanos = timeLookups(probes, bplus::contains);
+
+		System.out.println(n + " keys, fanout " + fanout);
+		System.out.printf("AVLTree:   height %2d, %6.1f bytes/key, %6.1f ns/contains%n",
+				avl.getHeight(), avlBytes / (double) n, avlNanos / (double) n);
+		System.out.printf("BPlusTree: height %2d, %6.1f bytes/key, %6.1f ns/contains%n",
+				bplus.getHeight(), bplusBytes / (double) n, bplusNanos / (double) n);
+		System.out.println("(bytes/key exclude the boxed keys, which both trees share)");
+	}
+
+	private static long timeLookups(Integer[] probes, java.util.function.Predicate<Integer> contains) {
+		int hits = 0;
+		for (int i = 0; i < probes.length / 10; i++) {	// warm up
+			if (contains.test(probes[i])) hits++;
+		}
+		long start = System.nanoTime();
+		for (Integer probe: probes) {
+			if (contains.test(probe)) hits++;
+		}
+		long elapsed = System.nanoTime() - start;
+		if (hits < 0) System.out.println(hits);	// keep the loop alive
+		return elapsed;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
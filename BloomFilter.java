@@ -0,0 +1,240 @@
+import java.util.Random;
+
+/*
+ * Blocked Bloom filter, a compact probabilistic set used in front of a lookup
+ * 	Answers "definitely absent" or "possibly present":
+ * 		no false negatives, false positives at a configurable rate
+ * 	Every key maps to one block of 512 bits (8 longs, the size of a cache line)
+ * 	and sets k bits inside it, so a query touches a single block instead of k
+ * 	random words. This costs a little accuracy over a classic Bloom filter,
+ * 	which is made up for by slightly more bits per key
+ * 	insertion and query are done in O[k]
+ * 	deletion is NOT supported: owners removing keys leave their bits set, which
+ * 	keeps answers correct but raises the false positive rate until rebuilt
+ * 	Keys are hashed through hashCode, so keys considered equal by the owner
+ * 	must have equal hash codes
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class BloomFilter {
+	private static final int BLOCK_LONGS = 8;	// 512 bits per block
+	private static final int MAX_HASHES = 16;
+
+	private final long[] bits;
+	private final int blocks;
+	private final int hashes;					// bits set per key
+	private final int expectedInsertions;
+	private final double falsePositiveRate;
+
+	/* counters, updated by the owner through the query methods */
+	private long queries;
+	private long rejected;			// lookups short-circuited
+	private long falsePositives;	// passed the filter, then missed in the owner
+
+	/**
+	 * Constructor
+	 * @param expectedInsertions	number of keys the filter is sized for
+	 * @param falsePositiveRate		target false positive rate at that many keys, in (0, 1)
+	 */
+	public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+			throw new IllegalArgumentException("bad expected insertions or false positive rate");
+		}
+		/* classic sizing, with 20% more bits to offset the blocking */
+		double bitsPerKey = 1.2 * -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		long totalBits = (long) Math.ceil(Math.max(expectedInsertions, 1) * bitsPerKey);
+		this.blocks = (int) Math.min((totalBits + 511) / 512, Integer.MAX_VALUE / BLOCK_LONGS);
+		this.bits = new long[blocks * BLOCK_LONGS];
+		this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey / 1.2 * Math.log(2))));
+		this.expectedInsertions = expectedInsertions;
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * Adds a key to the filter
+	 */
+	public void add(Object key) {
+		long hash = mix(key.hashCode());
+		int base = block(hash);
+		int h1 = (int) hash;
+		int h2 = secondHash(hash);
+		for (int i = 0; i < hashes; i++) {
+			int bit = (h1 + i * h2) & 511;
+			bits[base + (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Queries the filter, counting rejected keys as saved lookups
+	 * @return false if key was definitely never added, true if it might have been
+	 */
+	public boolean mightContain(Object key) {
+		queries++;
+		long hash = mix(key.hashCode());
+		int base = block(hash);
+		int h1 = (int) hash;
+		int h2 = secondHash(hash);
+		for (int i = 0; i < hashes; i++) {
+			int bit = (h1 + i * h2) & 511;
+			if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+				rejected++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * To be called by the owner when a key passed the filter but was not found
+	 */
+	public void recordFalsePositive() {
+		falsePositives++;
+	}
+
+	/**
+	 * @return index of the first long of the key's block
+	 */
+	private int block(long hash) {
+		/* maps the high half onto [0, blocks) without a division */
+		return (int) (((hash >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+	}
+
+	/**
+	 * @return step between the bit positions, odd so that the k positions differ
+	 * 		   and independent of the high half used to pick the block
+	 */
+	private static int secondHash(long hash) {
+		return (int) ((hash * 0xC2B2AE3D27D4EB4FL) >>> 32) | 1;
+	}
+
+	/**
+	 * Spreads a 32 bit hash code over 64 bits (SplitMix64 finalizer)
+	 */
+	private static long mix(int hashCode) {
+		long z = hashCode * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return number of keys the filter was sized for
+	 */
+	public int expectedInsertions() {
+		return expectedInsertions;
+	}
+
+	/**
+	 * @return false positive rate the filter was sized for
+	 */
+	public double falsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	/**
+	 * @return size of the filter in bytes
+	 */
+	public long sizeInBytes() {
+		return bits.length * 8L;
+	}
+
+	/**
+	 * @return number of queries made
+	 */
+	public long queries() {
+		return queries;
+	}
+
+	/**
+	 * @return number of lookups saved, i.e. queries rejected by the filter
+	 */
+	public long savedLookups() {
+		return rejected;
+	}
+
+	/**
+	 * @return number of queries that passed the filter for absent keys
+	 */
+	public long falsePositives() {
+		return falsePositives;
+	}
+
+	/**
+	 * @return observed false positive rate, over the queries for absent keys
+	 */
+	public double observedFalsePositiveRate() {
+		long negatives = rejected + falsePositives;
+		return (negatives == 0)? 0: falsePositives / (double) negatives;
+	}
+
+	/**
+	 * Carries the counters over from a filter this one replaces
+	 */
+	void copyCounters(BloomFilter other) {
+		queries = other.queries;
+		rejected = other.rejected;
+		falsePositives = other.falsePositives;
+	}
+
+	public String toString() {
+		return String.format("%d bytes, %d hashes, %d queries, %d lookups saved, "
+				+ "%d false positives (%.4f observed, %.4f target)", sizeInBytes(), hashes,
+				queries, rejected, falsePositives, observedFalsePositiveRate(), falsePositiveRate);
+	}
+
+	/**
+	 * Main method to test the filter in front of MyHashMap and AVLTree
+	 * on a workload made mostly of misses
+	 */
+	public static void main(String[] args) {
+		int n = 1000000;
+		int lookups = 4000000;
+		Random random = new Random(42);
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = random.nextInt();
+		}
+		Integer[] queries = new Integer[lookups];
+		for (int i = 0; i < lookups; i++) {
+			/* 90% misses */
+			queries[i] = (i % 10 == 0)? keys[random.nextInt(n)]: Integer.valueOf(random.nextInt());
+		}
+
+		MyHashMap<Integer, Integer> map = new MyHashMap<Integer, Integer>();
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		for (int i = 0; i < n; i++) {
+			map.put(keys[i], i);
+			tree.insert(keys[i]);
+		}
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			for (boolean filtered: new boolean[] {false, true}) {
+				if (filtered) {
+					map.enableFilter(0.01);
+					tree.enableFilter(0.01);
+				}
+				else {
+					map.disableFilter();
+					tree.disableFilter();
+				}
+				int hits = 0;
+				long start = System.nanoTime();
+				for (Integer key: queries) {
+					if (map.containsKey(key)) hits++;
+				}
+				long mapNanos = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: queries) {
+					if (tree.contains(key)) hits++;
+				}
+				long treeNanos = System.nanoTime() - start;
+				System.out.printf("%s: MyHashMap.containsKey %.1f ns, AVLTree.contains %.1f ns, hits %d%n",
+						filtered? "filtered  ": "unfiltered", mapNanos / (double) lookups,
+						treeNanos / (double) lookups, hits);
+			}
+		}
+		System.out.println("MyHashMap filter: " + map.getFilter());
+		System.out.println("AVLTree filter:   " + tree.getFilter());
+	}
+}
@@ -0,0 +1,348 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*
+ * Implementation of a lock-free skiplist
+ * 	A concurrent sorted set to use alongside AVLTree when many threads
+ * 	read and write the same index, without a global lock
+ * 	Please note that it can only hold data of comparable types
+ * 	Unlike AVLTree, duplicates are NOT stored
+ * 	insertion, deletion and search are done in expected O[log (N)]
+ * 	search is wait-free, insertion and deletion are lock-free
+ * 	Each next reference carries a mark bit (AtomicMarkableReference):
+ * 		a node is logically deleted once its level 0 reference is marked,
+ * 		and marked nodes are physically unlinked by later traversals
+ * 	Iteration is weakly consistent: it never fails, sees every item present
+ * 	for the whole iteration and may or may not see concurrent changes
+ */
+
+/**
+ * @author Jin Zhe
+ */
+class ConcurrentSkipList <T extends Comparable<T>> implements Iterable<T> {
+	private static final int MAX_LEVEL = 31;	// levels are numbered 0 to MAX_LEVEL
+	private final Node head;	// sentinel smaller than every item
+	private final Node tail;	// sentinel larger than every item
+
+	/**
+	 * constructor: create an empty skiplist
+	 */
+	public ConcurrentSkipList() {
+		head = new Node(null, MAX_LEVEL);
+		tail = new Node(null, MAX_LEVEL);
+		for (int level = 0; level <= MAX_LEVEL; level++) {
+			head.next[level] = new AtomicMarkableReference<Node>(tail, false);
+			tail.next[level] = new AtomicMarkableReference<Node>(null, false);
+		}
+	}
+
+	/**
+	 * search for given data, wait-free as it never helps unlink nodes
+	 */
+	public boolean contains(T data) {
+		boolean[] marked = {false};
+		Node pred = head;
+		Node curr = null;
+		for (int level = MAX_LEVEL; level >= 0; level--) {
+			curr = pred.next[level].getReference();
+			while (true) {
+				Node succ = curr.next[level].get(marked);
+				/* skip over logically deleted nodes */
+				while (marked[0]) {
+					curr = succ;
+					succ = curr.next[level].get(marked);
+				}
+				if (isBefore(curr, data)) {
+					pred = curr;
+					curr = succ;
+				}
+				else {
+					break;
+				}
+			}
+		}
+		return curr != tail && data.compareTo(curr.data) == 0;
+	}
+
+	/**
+	 * Inserts data if not already present
+	 * @return true if inserted, false if an equal item was already present
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public boolean insert(T data) {
+		int topLevel = randomLevel();
+		Node[] preds = new ConcurrentSkipList.Node[MAX_LEVEL + 1];
+		Node[] succs = new ConcurrentSkipList.Node[MAX_LEVEL + 1];
+		while (true) {
+			if (find(data, preds, succs)) {
+				return false;
+			}
+			Node node = new Node(data, topLevel);
+			for (int level = 0; level <= topLevel; level++) {
+				node.next[level] = new AtomicMarkableReference<Node>(succs[level], false);
+			}
+			/* linking at level 0 is the linearization point */
+			if (!preds[0].next[0].compareAndSet(succs[0], node, false, false)) {
+				continue;
+			}
+			/* link the upper levels, which only serve as shortcuts */
+			for (int level = 1; level <= topLevel; level++) {
+				while (true) {
+					Node pred = preds[level];
+					Node succ = succs[level];
+					Node expected = node.next[level].getReference();
+					/* point to the latest successor, unless a remover has marked the node */
+					if (expected != succ
+							&& !node.next[level].compareAndSet(expected, succ, false, false)) {
+						return true;
+					}
+					if (pred.next[level].compareAndSet(succ, node, false, false)) {
+						break;
+					}
+					find(data, preds, succs);	// recompute the neighbours
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Removes data if present
+	 * @return true if this call removed the item
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public boolean remove(T data) {
+		Node[] preds = new ConcurrentSkipList.Node[MAX_LEVEL + 1];
+		Node[] succs = new ConcurrentSkipList.Node[MAX_LEVEL + 1];
+		boolean[] marked = {false};
+		if (!find(data, preds, succs)) {
+			return false;
+		}
+		Node victim = succs[0];
+		/* mark the upper levels top down */
+		for (int level = victim.topLevel; level >= 1; level--) {
+			Node succ = victim.next[level].get(marked);
+			while (!marked[0]) {
+				victim.next[level].attemptMark(succ, true);
+				succ = victim.next[level].get(marked);
+			}
+		}
+		/* marking level 0 is the linearization point, only one remover wins */
+		Node succ = victim.next[0].get(marked);
+		while (true) {
+			boolean markedByMe = victim.next[0].compareAndSet(succ, succ, false, true);
+			succ = victim.next[0].get(marked);
+			if (markedByMe) {
+				find(data, preds, succs);	// physically unlink the node
+				return true;
+			}
+			else if (marked[0]) {
+				return false;	// another thread removed it first
+			}
+		}
+	}
+
+	/**
+	 * Finds the predecessors and successors of data at every level,
+	 * unlinking any marked node met on the way
+	 * @return true if data is present
+	 */
+	private boolean find(T data, Node[] preds, Node[] succs) {
+		boolean[] marked = {false};
+		retry:
+		while (true) {
+			Node pred = head;
+			Node curr = null;
+			for (int level = MAX_LEVEL; level >= 0; level--) {
+				curr = pred.next[level].getReference();
+				while (true) {
+					Node succ = curr.next[level].get(marked);
+					while (marked[0]) {
+						if (!pred.next[level].compareAndSet(curr, succ, false, false)) {
+							continue retry;	// pred changed under us, start over
+						}
+						curr = succ;
+						succ = curr.next[level].get(marked);
+					}
+					if (isBefore(curr, data)) {
+						pred = curr;
+						curr = succ;
+					}
+					else {
+						break;
+					}
+				}
+				preds[level] = pred;
+				succs[level] = curr;
+			}
+			return curr != tail && data.compareTo(curr.data) == 0;
+		}
+	}
+
+	/**
+	 * Returns true if node sorts strictly before data
+	 */
+	private boolean isBefore(Node node, T data) {
+		return node != tail && data.compareTo(node.data) > 0;
+	}
+
+	/**
+	 * Geometric level distribution with p = 1/2
+	 */
+	private static int randomLevel() {
+		int bits = ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL);
+		return Integer.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Returns the smallest item, or null if empty
+	 */
+	public T first() {
+		Iterator<T> iterator = iterator();
+		return iterator.hasNext()? iterator.next(): null;
+	}
+
+	/**
+	 * Returns true if skiplist is empty, else false
+	 */
+	public boolean isEmpty() {
+		return first() == null;
+	}
+
+	/**
+	 * Returns number of items
+	 * O[N], and only an estimate while the skiplist is being modified
+	 */
+	public int size() {
+		int size = 0;
+		for (Iterator<T> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Weakly consistent in-order iterator over the bottom level
+	 */
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private Node next = advance(head);
+
+			public boolean hasNext() {
+				return next != tail;
+			}
+
+			public T next() {
+				if (next == tail) {
+					throw new NoSuchElementException();
+				}
+				T data = next.data;
+				next = advance(next);
+				return data;
+			}
+		};
+	}
+
+	/**
+	 * Returns the first node after the given one that is not logically deleted
+	 */
+	private Node advance(Node node) {
+		node = node.next[0].getReference();
+		while (node != tail && node.next[0].isMarked()) {
+			node = node.next[0].getReference();
+		}
+		return node;
+	}
+
+	/**
+	 * Visits all items in order, weakly consistent like the iterator
+	 */
+	public void forEach(Consumer<? super T> action) {
+		for (Node node = advance(head); node != tail; node = advance(node)) {
+			action.accept(node.data);
+		}
+	}
+
+	/**
+	 * Inorder traversal
+	 */
+	public void printInorder() {
+		forEach(data -> System.out.print(data + ", "));
+	}
+
+	/**
+	 * Node class
+	 */
+	private class Node {
+		protected final T data;
+		protected final int topLevel;
+		protected final AtomicMarkableReference<Node>[] next;	// mark bit = deleted
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public Node(T data, int topLevel) {
+			this.data = data;
+			this.topLevel = topLevel;
+			next = new AtomicMarkableReference[topLevel + 1];
+		}
+	}
+
+	/**
+	 * Main method to test the data structure and its scaling
+	 * 	args[0]: number of keys in the key space (default 1,000,000)
+	 * 	args[1]: milliseconds per run (default 1000)
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		ConcurrentSkipList<Integer> small = new ConcurrentSkipList<Integer>();
+		for (int i: new int[] {5, 1, 9, 3, 7, 3}) {
+			small.insert(i);
+		}
+		small.remove(9);
+		System.out.print("Inorder: ");
+		small.printInorder();
+		System.out.println("\ncontains 7: " + small.contains(7) + ", contains 9: " + small.contains(9));
+
+		final int keySpace = (args.length > 0)? Integer.parseInt(args[0]): 1000000;
+		final long millis = (args.length > 1)? Long.parseLong(args[1]): 1000;
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println("threads, 90% contains / 5% insert / 5% remove, Mops/s");
+		for (int threads = 1; threads <= Math.max(cores, 1); threads *= 2) {
+			final ConcurrentSkipList<Integer> list = new ConcurrentSkipList<Integer>();
+			for (int i = 0; i < keySpace; i += 2) {
+				list.insert(i);
+			}
+			final LongAdder operations = new LongAdder();
+			final long deadline = System.nanoTime() + millis * 1000000;
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				workers[t] = new Thread(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					long count = 0;
+					while ((count & 1023) != 0 || System.nanoTime() < deadline) {
+						int key = random.nextInt(keySpace);
+						int dice = random.nextInt(100);
+						if (dice < 90) {
+							list.contains(key);
+						}
+						else if (dice < 95) {
+							list.insert(key);
+						}
+						else {
+							list.remove(key);
+						}
+						count++;
+					}
+					operations.add(count);
+				});
+				workers[t].start();
+			}
+			for (Thread worker: workers) {
+				worker.join();
+			}
+			System.out.printf("%7d, %.2f%n", threads, operations.sum() / (millis * 1000.0));
+		}
+	}
+}
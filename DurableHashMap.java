@@ -0,0 +1,777 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/*
+ * MyHashMap made durable by a write-ahead log, for maps that must survive a crash
+ * 	Every put and remove appends a record to the log before returning:
+ * 		length (4 bytes) | CRC32C of payload (4 bytes) | payload
+ * 		payload: op | key | value (puts only), each value length-prefixed by a varint
+ * 	Group commit: records are appended to a shared buffer, and whichever writer
+ * 	finds no write in progress becomes the leader, writing (and forcing) everything
+ * 	buffered so far in one go while the others wait for it or queue up the next batch
+ * 	Durability levels, from fastest to safest:
+ * 		NONE:	returns once buffered, written and forced in the background every
+ * 				flushMillis, so a crash may lose that much
+ * 		WRITE:	returns once written to the OS, surviving a process crash
+ * 				but not a power failure
+ * 		SYNC:	returns once forced to the device
+ * 	Compaction writes the map as a Snapshot and starts a new log, in generations:
+ * 		snapshot.<g> holds everything logged before wal.<g>
+ * 	and runs in the background once the log exceeds compactBytes; only copying
+ * 	the map blocks other calls, the snapshot being written from the copy while
+ * 	later records go to the new log, and recovery replays the older logs as well
+ * 	until it is in place
+ * 	A failed compaction leaves the log in place and is reported by compactionFailure,
+ * 	the next attempt waiting until the log has grown by another compactBytes
+ * 	Recovery loads the newest snapshot and replays the logs from its generation on,
+ * 	stopping at the first torn or corrupt record, which is cut off
+ * 	Keys must have a hashcode that is stable across JVMs (e.g. Integer, String)
+ * 	as the snapshot is restored bucket by bucket
+ * 	Thread-safe, all map operations taking one lock; I/O is done outside it
+ * 	A change is visible to get as soon as it is applied, before its record is
+ * 	durable, so other threads may read a change that a crash then loses
+ * 	Once a log write fails the map holds changes missing from the log, so every
+ * 	later call fails with the cause; reopening recovers the durable state
+ * 	Writers must not be interrupted while writing, which closes the log channel
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class DurableHashMap<K, V> implements AutoCloseable {
+	public enum Durability { NONE, WRITE, SYNC }
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final int HEADER = 8;	// length and checksum
+
+	private final File directory;
+	private final Snapshot.Codec<K> keyCodec;
+	private final Snapshot.Codec<V> valueCodec;
+	private final Durability durability;
+	private final long compactBytes;
+	private MyHashMap<K, V> map;
+
+	private final ReentrantLock compacting = new ReentrantLock();	// one compaction at a time
+
+	/* guarded by lock */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition written = lock.newCondition();
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);	// appended, not yet written
+	private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);		// being written by the leader
+	private ByteBuffer scratch = ByteBuffer.allocate(256);			// holds one encoded value
+	private long appended;		// log bytes appended, written or not
+	private long writtenBytes;	// log bytes written to the OS
+	private long forced;		// log bytes forced to the device
+	private boolean leading;	// a leader is writing outside the lock
+	private IOException failure;		// failed log write, the map is unusable from then on
+	private IOException compactionFailure;	// last background compaction failure
+	private long compactAt;		// log size at which the next background compaction runs
+	private FileChannel log;
+	private long generation;
+	private long logSize;		// bytes in the current log file, once written
+	private boolean closed;
+
+	private final ScheduledExecutorService background;
+	private final CRC32C crc = new CRC32C();
+	private final AtomicLong commits = new AtomicLong();	// writes done by leaders
+
+	/**
+	 * Opens the map stored in directory, recovering it from the snapshot and logs
+	 * @param directory		directory of the snapshot and logs, created if missing
+	 * @param durability	when put and remove return, see Durability
+	 * @param flushMillis	background flush period, for NONE
+	 * @param compactBytes	log size beyond which the map is compacted into a snapshot
+	 */
+	public DurableHashMap(File directory, Snapshot.Codec<K> keyCodec, Snapshot.Codec<V> valueCodec,
+			Durability durability, long flushMillis, long compactBytes) throws IOException {
+		this.directory = directory;
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.durability = durability;
+		this.compactBytes = compactBytes;
+		this.compactAt = compactBytes;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create " + directory);
+		}
+		recover();
+		background = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "durable-hashmap");
+			thread.setDaemon(true);
+			return thread;
+		});
+		background.scheduleWithFixedDelay(this::maintain, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Puts the given entry, returning once it is as durable as configured
+	 */
+	public void put(K key, V value) throws IOException {
+		long end;
+		lock.lock();
+		try {
+			checkWritable();
+			end = append(PUT, key, value);	// first, as encoding may throw
+			map.put(key, value);
+		}
+		finally {
+			lock.unlock();
+		}
+		commit(end, durability);
+	}
+
+	/**
+	 * Removes entry for the given key if present, returning once it is as durable as configured
+	 * @return value associated with key
+	 */
+	public V remove(K key) throws IOException {
+		long end;
+		V value;
+		lock.lock();
+		try {
+			checkWritable();
+			value = map.get(key);
+			if (value == null) {
+				return null;	// nothing to log
+			}
+			end = append(REMOVE, key, null);	// first, as encoding may throw
+			map.remove(key);
+		}
+		finally {
+			lock.unlock();
+		}
+		commit(end, durability);
+		return value;
+	}
+
+	public V get(K key) {
+		lock.lock();
+		try {
+			checkReadable();
+			return map.get(key);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean containsKey(K key) {
+		return get(key) != null;
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			checkReadable();
+			return map.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Forces every record appended so far to the device, whatever the durability
+	 */
+	public void flush() throws IOException {
+		long end;
+		lock.lock();
+		try {
+			end = appended;
+		}
+		finally {
+			lock.unlock();
+		}
+		commit(end, Durability.SYNC);
+	}
+
+	/**
+	 * @return number of log writes done so far, each covering a group of records
+	 */
+	public long commits() {
+		return commits.get();
+	}
+
+	/**
+	 * Appends a record to the pending buffer
+	 * @return log position at the end of the record
+	 */
+	private long append(byte op, K key, V value) {
+		int keyLength = encode(key, keyCodec);
+		byte[] keyBytes = Arrays.copyOf(scratch.array(), keyLength);
+		int valueLength = (op == PUT)? encode(value, valueCodec): 0;
+		int payload = 1 + Snapshot.varIntSize(keyLength) + keyLength
+				+ ((op == PUT)? Snapshot.varIntSize(valueLength) + valueLength: 0);
+		ensure(HEADER + payload);
+		int start = pending.position();
+		pending.position(start + HEADER);
+		pending.put(op);
+		Snapshot.putVarInt(pending, keyLength);
+		pending.put(keyBytes);
+		if (op == PUT) {
+			Snapshot.putVarInt(pending, valueLength);
+			pending.put(scratch.array(), 0, valueLength);
+		}
+		crc.reset();
+		crc.update(pending.array(), start + HEADER, payload);
+		pending.putInt(start, payload);
+		pending.putInt(start + 4, (int) crc.getValue());
+		appended += HEADER + payload;
+		return appended;
+	}
+
+	/**
+	 * Encodes value into scratch, doubling it until the value fits
+	 * @return encoded length
+	 */
+	private <T> int encode(T value, Snapshot.Codec<T> codec) {
+		while (true) {
+			scratch.clear();
+			try {
+				codec.encode(value, scratch);
+				return scratch.position();
+			}
+			catch (BufferOverflowException e) {
+				scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+			}
+		}
+	}
+
+	private void ensure(int n) {
+		if (pending.remaining() < n) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + n));
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+	}
+
+	/**
+	 * Waits until the log is written (and forced for SYNC) up to end, leading the
+	 * write of everything pending if no other writer is
+	 */
+	private void commit(long end, Durability level) throws IOException {
+		if (level == Durability.NONE) {
+			return;
+		}
+		lock.lock();
+		try {
+			while ((level == Durability.SYNC)? forced < end: writtenBytes < end) {
+				if (failure != null) {
+					throw new IOException("log write failed", failure);
+				}
+				if (leading) {
+					written.awaitUninterruptibly();
+				}
+				else {
+					lead(level == Durability.SYNC || durability == Durability.SYNC);
+				}
+			}
+			if (failure != null) {
+				throw new IOException("log write failed", failure);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes everything pending, releasing the lock during the I/O so that other
+	 * writers can append the next group meanwhile
+	 * Called with the lock held
+	 */
+	private void lead(boolean force) {
+		leading = true;
+		ByteBuffer batch = pending;
+		pending = spare;
+		spare = batch;
+		long end = appended;
+		FileChannel channel = log;
+		lock.unlock();
+		IOException error = null;
+		try {
+			batch.flip();
+			while (batch.hasRemaining()) {
+				channel.write(batch);
+			}
+			if (force) {
+				channel.force(false);
+			}
+			commits.incrementAndGet();
+		}
+		catch (IOException e) {
+			error = e;
+		}
+		finally {
+			batch.clear();
+			lock.lock();
+		}
+		leading = false;
+		if (error != null) {
+			failure = error;
+		}
+		else {
+			logSize += end - writtenBytes;
+			writtenBytes = end;
+			if (force) {
+				forced = end;
+			}
+		}
+		written.signalAll();
+	}
+
+	/**
+	 * Background task: flushes for NONE, and compacts once the log is too large
+	 * Nothing may escape it, as that would cancel the periodic task
+	 */
+	private void maintain() {
+		try {
+			if (durability == Durability.NONE) {
+				flush();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			return;	// recorded as failure by lead, every later call fails with it
+		}
+		boolean due;
+		lock.lock();
+		try {
+			due = !closed && failure == null && logSize > compactAt;
+		}
+		finally {
+			lock.unlock();
+		}
+		if (!due) {
+			return;
+		}
+		try {
+			compact();
+		}
+		catch (IOException | RuntimeException e) {
+			IOException error = (e instanceof IOException)? (IOException) e:
+					new IOException("compaction failed", e);
+			lock.lock();
+			try {
+				compactionFailure = error;	// reported by compactionFailure()
+				compactAt = logSize + compactBytes;	// no retry on every tick
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return cause of the last failed background compaction, or null if the
+	 * 	last one succeeded or none failed
+	 */
+	public IOException compactionFailure() {
+		lock.lock();
+		try {
+			return compactionFailure;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the map as a snapshot of a new generation and starts a new log,
+	 * then deletes the files of the previous generations
+	 * Other calls are only blocked while the map is copied, O[N] in memory:
+	 * the snapshot is written from the copy while later records go to the new log
+	 */
+	public void compact() throws IOException {
+		compacting.lock();
+		try {
+			long next;
+			MyHashMap<K, V> frozen;
+			lock.lock();
+			try {
+				checkWritable();
+				while (leading) {
+					written.awaitUninterruptibly();
+				}
+				if (pending.position() > 0 || forced < writtenBytes) {
+					lead(true);	// the current log must be complete before the next one starts
+					if (failure != null) {
+						throw new IOException("log write failed", failure);
+					}
+				}
+				next = generation + 1;
+				FileChannel nextLog = openLog(next);
+				frozen = copy(map);
+				/* until the snapshot is in place, recovery replays both logs */
+				FileChannel previousLog = log;
+				log = nextLog;
+				logSize = 0;
+				generation = next;
+				compactAt = compactBytes;
+				closeQuietly(previousLog);	// written and forced in full
+			}
+			finally {
+				lock.unlock();
+			}
+			File temp = new File(directory, "snapshot." + next + ".tmp");
+			try {
+				try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					Snapshot.write(frozen, keyCodec, valueCodec, channel);
+					channel.force(true);
+				}
+				Files.move(temp.toPath(), snapshotFile(next).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (IOException | RuntimeException e) {
+				temp.delete();	// the logs still hold every record
+				throw e;
+			}
+			forceDirectory();
+			/* recovery now starts from the new snapshot, the older files are no longer read */
+			for (File file: directory.listFiles()) {
+				String name = file.getName();
+				if ((name.startsWith("snapshot.") && Long.parseLong(name.substring(9)) < next)
+						|| (name.startsWith("wal.") && Long.parseLong(name.substring(4)) < next)) {
+					file.delete();
+				}
+			}
+			lock.lock();
+			try {
+				compactionFailure = null;
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		finally {
+			compacting.unlock();
+		}
+	}
+
+	/**
+	 * @return a map with copies of the entries of map, sharing its keys and values,
+	 * 		   so that it can be written while map changes
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <K, V> MyHashMap<K, V> copy(MyHashMap<K, V> map) {
+		MyHashMap.Entry<K, V>[] table = map.getTable();
+		MyHashMap.Entry<K, V>[] copied = new MyHashMap.Entry[table.length];
+		for (int index = 0; index < table.length; index++) {
+			MyHashMap.Entry<K, V> tail = null;
+			for (MyHashMap.Entry<K, V> entry = table[index]; entry != null; entry = entry.next) {
+				MyHashMap.Entry<K, V> node = new MyHashMap.Entry<K, V>(entry.key, entry.value, null);
+				if (tail == null) {
+					copied[index] = node;
+				}
+				else {
+					tail.next = node;
+				}
+				tail = node;
+			}
+		}
+		return new MyHashMap<K, V>(copied, map.size());
+	}
+
+	/**
+	 * Loads the newest snapshot and replays the logs written since
+	 */
+	private void recover() throws IOException {
+		long newest = -1;
+		List<Long> logs = new ArrayList<Long>();
+		for (File file: directory.listFiles()) {
+			String name = file.getName();
+			if (name.endsWith(".tmp")) {
+				file.delete();	// unfinished compaction
+			}
+			else if (name.startsWith("snapshot.")) {
+				newest = Math.max(newest, Long.parseLong(name.substring("snapshot.".length())));
+			}
+			else if (name.startsWith("wal.")) {
+				logs.add(Long.parseLong(name.substring("wal.".length())));
+			}
+		}
+		generation = Math.max(newest, 0);
+		if (newest >= 0) {
+			try (FileChannel channel = FileChannel.open(snapshotFile(newest).toPath(),
+					StandardOpenOption.READ)) {
+				map = Snapshot.readHashMap(channel, keyCodec, valueCodec);
+			}
+		}
+		else {
+			map = new MyHashMap<K, V>();
+		}
+		Collections.sort(logs);
+		for (long g: logs) {
+			if (g < generation) {
+				logFile(g).delete();	// already in the snapshot
+				continue;
+			}
+			generation = g;
+			logSize = replay(logFile(g));
+		}
+		for (File file: directory.listFiles()) {
+			String name = file.getName();
+			if (name.startsWith("snapshot.") && Long.parseLong(name.substring(9)) < newest) {
+				file.delete();
+			}
+		}
+		log = openLog(generation);
+		log.truncate(logSize);	// cuts off a torn tail
+		log.position(logSize);
+		log.force(true);
+	}
+
+	/**
+	 * Applies the records of a log to the map
+	 * @return length of the valid prefix of the log
+	 */
+	private long replay(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.remaining() >= HEADER) {
+			int start = buffer.position();
+			int payload = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (payload <= 0 || payload > buffer.remaining()) {
+				return start;	// torn write
+			}
+			crc.reset();
+			crc.update(bytes, buffer.position(), payload);
+			if ((int) crc.getValue() != checksum) {
+				return start;	// corrupt or torn write
+			}
+			ByteBuffer record = ByteBuffer.wrap(bytes, buffer.position(), payload);
+			buffer.position(buffer.position() + payload);
+			byte op = record.get();
+			K key = decode(record, keyCodec);
+			if (op == PUT) {
+				map.put(key, decode(record, valueCodec));
+			}
+			else if (op == REMOVE) {
+				map.remove(key);
+			}
+			else {
+				throw new IOException("Corrupt log: unknown op " + op);
+			}
+		}
+		return buffer.position();
+	}
+
+	private static <T> T decode(ByteBuffer record, Snapshot.Codec<T> codec) throws IOException {
+		int length = Snapshot.getVarInt(record);
+		if (length > record.remaining()) {
+			throw new IOException("Corrupt log: value past the end of its record");
+		}
+		ByteBuffer value = record.slice();
+		value.limit(length);
+		record.position(record.position() + length);
+		return codec.decode(value);
+	}
+
+	private FileChannel openLog(long g) throws IOException {
+		return FileChannel.open(logFile(g).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private File logFile(long g) {
+		return new File(directory, "wal." + g);
+	}
+
+	private File snapshotFile(long g) {
+		return new File(directory, "snapshot." + g);
+	}
+
+	/**
+	 * Makes the renames and creations in the directory durable
+	 */
+	private void forceDirectory() throws IOException {
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+		catch (IOException e) {
+			/* not supported on every platform, the rename is still atomic */
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			/* nothing left to lose in it */
+		}
+	}
+
+	/**
+	 * Refuses writes once closed, or once a log write failed
+	 */
+	private void checkWritable() throws IOException {
+		if (closed) {
+			throw new IllegalStateException("closed");
+		}
+		if (failure != null) {
+			throw new IOException("log write failed, reopen to recover", failure);
+		}
+	}
+
+	/**
+	 * Refuses reads once a log write failed, as the map may hold lost changes
+	 */
+	private void checkReadable() {
+		if (failure != null) {
+			throw new UncheckedIOException("log write failed, reopen to recover", failure);
+		}
+	}
+
+	/**
+	 * Forces everything to the device and closes the log
+	 */
+	public void close() throws IOException {
+		background.shutdown();	// no interrupt, which would close the log channel
+		try {
+			background.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush();
+		}
+		finally {
+			lock.lock();
+			try {
+				if (!closed) {
+					closed = true;
+					log.close();
+				}
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Main method: simple tests, throughput of each durability level with concurrent
+	 * writers, then recovery of a writer process killed mid-way
+	 * 	args[0]: number of writer threads (default 8)
+	 * 	args[1]: puts per thread (default 20,000)
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2 && args[0].equals("writer")) {
+			writer(new File(args[1]));
+			return;
+		}
+		File root = Files.createTempDirectory("durable-hashmap").toFile();
+		File directory = new File(root, "demo");
+		DurableHashMap<String, Integer> demo = new DurableHashMap<String, Integer>(directory,
+				Snapshot.STRING, Snapshot.INTEGER, Durability.SYNC, 100, 1 << 20);
+		demo.put("haha", 1);
+		demo.put("hehe", 2);
+		demo.put("haha", 3);
+		demo.remove("hehe");
+		demo.compact();
+		demo.put("hoho", 4);
+		demo.close();
+		demo = new DurableHashMap<String, Integer>(directory, Snapshot.STRING, Snapshot.INTEGER,
+				Durability.SYNC, 100, 1 << 20);
+		System.out.println("Reopened: haha=" + demo.get("haha") + ", hehe=" + demo.get("hehe")
+				+ ", hoho=" + demo.get("hoho") + ", size " + demo.size()
+				+ ", files " + Arrays.toString(directory.list()));
+		demo.close();
+
+		int threads = (args.length > 0)? Integer.parseInt(args[0]): 8;
+		int puts = (args.length > 1)? Integer.parseInt(args[1]): 20000;
+		for (Durability level: Durability.values()) {
+			File levelDirectory = new File(root, level.name());
+			DurableHashMap<Integer, String> map = new DurableHashMap<Integer, String>(levelDirectory,
+					Snapshot.INTEGER, Snapshot.STRING, level, 10, 8 << 20);
+			Thread[] writers = new Thread[threads];
+			long start = System.nanoTime();
+			for (int t = 0; t < threads; t++) {
+				int base = t * puts;
+				writers[t] = new Thread(() -> {
+					try {
+						for (int i = 0; i < puts; i++) {
+							map.put(base + i, "value " + (base + i));
+						}
+					}
+					catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+				writers[t].start();
+			}
+			for (Thread writer: writers) {
+				writer.join();
+			}
+			long nanos = System.nanoTime() - start;
+			long commits = map.commits();
+			map.close();
+			DurableHashMap<Integer, String> reopened = new DurableHashMap<Integer, String>(levelDirectory,
+					Snapshot.INTEGER, Snapshot.STRING, level, 10, 8 << 20);
+			System.out.printf("%-5s %d threads: %,.0f puts/s, %.1f records per log write, %d entries after reopening%n",
+					level, threads, threads * (double) puts * 1e9 / nanos,
+					threads * (double) puts / Math.max(commits, 1), reopened.size());
+			reopened.close();
+		}
+
+		/* a child process puts keys in order with SYNC, acknowledging them on stdout */
+		File crashDirectory = new File(root, "crash");
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				"DurableHashMap", "writer", crashDirectory.getPath())
+				.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(),
+				StandardCharsets.UTF_8));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+		int acknowledged = -1;
+		String line;
+		while (System.nanoTime() < deadline && (line = reader.readLine()) != null) {
+			acknowledged = Integer.parseInt(line);
+		}
+		child.destroyForcibly().waitFor();
+		DurableHashMap<Integer, String> recovered = new DurableHashMap<Integer, String>(crashDirectory,
+				Snapshot.INTEGER, Snapshot.STRING, Durability.SYNC, 100, 1 << 20);
+		boolean complete = true;
+		for (int i = 0; i <= acknowledged; i++) {
+			complete &= ("value " + i).equals(recovered.get(i));
+		}
+		System.out.println("Killed writer after " + (acknowledged + 1) + " acknowledged puts, recovered "
+				+ recovered.size() + ", all acknowledged present: " + complete);
+		recovered.close();
+	}
+
+	/**
+	 * Child process of main: puts keys 0, 1, 2... until killed, printing each one
+	 * acknowledged, with a small log so that it compacts on the way
+	 */
+	private static void writer(File directory) throws IOException {
+		DurableHashMap<Integer, String> map = new DurableHashMap<Integer, String>(directory,
+				Snapshot.INTEGER, Snapshot.STRING, Durability.SYNC, 10, 64 * 1024);
+		for (int i = 0; ; i++) {
+			map.put(i, "value " + i);
+			System.out.println(i);
+		}
+	}
+}
@@ -0,0 +1,398 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * External-memory k-way merge sort
+ * 	Sorts inputs far larger than memory in two phases:
+ * 		1. run formation: the input is cut into runs of runLength items, each
+ * 		   sorted in memory and spilled to a temp file, several runs in parallel
+ * 		2. merging: up to fanIn runs are merged at a time through a MyHeap holding
+ * 		   one cursor per run, repeating passes until one final merge remains
+ * 	Runs and the output use the Snapshot sorted run format, written and read through
+ * 	buffered NIO channels with a pluggable codec
+ * 	Memory use is about (threads * runLength) items while forming runs, a buffer
+ * 	being filled only once fewer than threads runs are in flight,
+ * 	and (threads * (fanIn + 1) * 64KB) of channel buffers during the intermediate
+ * 	passes, which merge up to threads groups at once, ((fanIn + 1) * 64KB) in the
+ * 	final merge
+ * 	I/O is O[N log_fanIn (N / runLength)], comparisons are O[N log (N)]
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class ExternalSorter <T extends Comparable<T>> {
+	private final Snapshot.Codec<T> codec;
+	private final int runLength;
+	private final int fanIn;
+	private final File tempDirectory;
+	private final int threads;
+
+	/**
+	 * Constructor
+	 * @param codec			codec for the items
+	 * @param runLength		number of items sorted in memory per run
+	 * @param fanIn			maximum number of runs merged at once, at least 2
+	 * @param tempDirectory	directory for the runs, or null for the system default
+	 * @param threads		number of runs sorted (and merges done) in parallel
+	 */
+	public ExternalSorter(Snapshot.Codec<T> codec, int runLength, int fanIn, File tempDirectory,
+			int threads) {
+		if (runLength < 1 || fanIn < 2 || threads < 1) {
+			throw new IllegalArgumentException("runLength >= 1, fanIn >= 2 and threads >= 1 required");
+		}
+		this.codec = codec;
+		this.runLength = runLength;
+		this.fanIn = fanIn;
+		this.tempDirectory = tempDirectory;
+		this.threads = threads;
+	}
+
+	/**
+	 * Sorts the input into the output channel, in sorted run format
+	 * @return number of items sorted
+	 */
+	public long sort(Iterator<? extends T> input, WritableByteChannel output) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Run> runs = new ArrayList<Run>();
+		try {
+			runs = createRuns(input, pool);
+			/* intermediate passes until the final merge fits the fan-in */
+			while (runs.size() > fanIn) {
+				runs = mergePass(runs, pool);
+			}
+			return merge(runs, output);
+		}
+		finally {
+			pool.shutdownNow();
+			for (Run run: runs) {
+				run.file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Cuts the input into sorted runs, sorting up to threads runs at once
+	 */
+	private List<Run> createRuns(Iterator<? extends T> input, ExecutorService pool)
+			throws IOException {
+		List<Future<Run>> pending = new ArrayList<Future<Run>>();
+		List<Run> runs = new ArrayList<Run>();
+		try {
+			while (input.hasNext()) {
+				/* bound memory: wait for the oldest run before filling another */
+				if (pending.size() == threads) {
+					runs.add(await(pending.remove(0)));
+				}
+				final ArrayList<T> buffer = new ArrayList<T>(runLength);
+				while (buffer.size() < runLength && input.hasNext()) {
+					buffer.add(input.next());
+				}
+				pending.add(pool.submit(() -> {
+					Collections.sort(buffer);
+					return writeRun(buffer.iterator(), buffer.size());
+				}));
+			}
+			while (!pending.isEmpty()) {
+				runs.add(await(pending.remove(0)));
+			}
+			return runs;
+		}
+		catch (IOException | RuntimeException e) {
+			for (Run run: runs) {
+				run.file.delete();
+			}
+			discard(pending);	// runs still being written would leak their files
+			throw e;
+		}
+	}
+
+	/**
+	 * Merges groups of fanIn runs into fewer runs, groups being merged in parallel
+	 */
+	private List<Run> mergePass(List<Run> runs, ExecutorService pool) throws IOException {
+		List<Future<Run>> merged = new ArrayList<Future<Run>>();
+		for (int i = 0; i < runs.size(); i += fanIn) {
+			final List<Run> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+			merged.add(pool.submit(() -> {
+				File file = File.createTempFile("run", ".bin", tempDirectory);
+				try (FileChannel channel = FileChannel.open(file.toPath(),
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					return new Run(file, merge(group, channel));
+				}
+				catch (IOException | RuntimeException e) {
+					file.delete();
+					throw e;
+				}
+			}));
+		}
+		List<Run> result = new ArrayList<Run>();
+		try {
+			for (Future<Run> future: merged) {
+				result.add(await(future));
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			discard(merged);	// deletes the merged runs, finished or not
+			throw e;
+		}
+		for (Run run: runs) {
+			run.file.delete();
+		}
+		return result;
+	}
+
+	/**
+	 * k-way merge of runs into the channel, using a MyHeap of run cursors
+	 * @return number of items written
+	 */
+	private long merge(List<Run> runs, WritableByteChannel output) throws IOException {
+		long total = 0;
+		for (Run run: runs) {
+			total += run.count;
+		}
+		Snapshot.Writer out = new Snapshot.Writer(output, Snapshot.SORTED_RUN);
+		out.writeVarLong(total);
+		List<FileChannel> channels = new ArrayList<FileChannel>();
+		try {
+			MyHeap<Cursor> heap = new MyHeap<Cursor>();
+			for (int i = 0; i < runs.size(); i++) {
+				FileChannel channel = FileChannel.open(runs.get(i).file.toPath(),
+						StandardOpenOption.READ);
+				channels.add(channel);
+				Cursor cursor = new Cursor(channel, i);
+				if (cursor.advance()) {
+					heap.offer(cursor);
+				}
+			}
+			/* repeatedly emit the smallest head, refilling from the same run */
+			while (heap.size() > 0) {
+				Cursor cursor = heap.poll();
+				out.write(cursor.current, codec);
+				if (cursor.advance()) {
+					heap.offer(cursor);
+				}
+			}
+			out.flush();
+		}
+		finally {
+			for (FileChannel channel: channels) {
+				channel.close();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Writes sorted items to a new temp file
+	 */
+	private Run writeRun(Iterator<T> sorted, long count) throws IOException {
+		File file = File.createTempFile("run", ".bin", tempDirectory);
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			Snapshot.Writer out = new Snapshot.Writer(channel, Snapshot.SORTED_RUN);
+			out.writeVarLong(count);
+			while (sorted.hasNext()) {
+				out.write(sorted.next(), codec);
+			}
+			out.flush();
+		}
+		catch (IOException | RuntimeException e) {
+			file.delete();
+			throw e;
+		}
+		return new Run(file, count);
+	}
+
+	private static Run await(Future<Run> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while sorting", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("sorting failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Waits for every run still being written and deletes its file, after a failure
+	 * Failed runs have already deleted theirs
+	 */
+	private static void discard(List<Future<Run>> futures) {
+		boolean interrupted = false;
+		for (Future<Run> future: futures) {
+			while (true) {
+				try {
+					future.get().file.delete();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;	// the file must still be deleted, so keep waiting
+				}
+				catch (ExecutionException | CancellationException e) {
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads back items written in sorted run format, e.g. the output of sort
+	 * I/O errors while iterating are thrown as UncheckedIOException
+	 */
+	public static <T> Iterator<T> read(ReadableByteChannel channel, final Snapshot.Codec<T> codec)
+			throws IOException {
+		final Snapshot.Reader in = new Snapshot.Reader(channel, Snapshot.SORTED_RUN);
+		final long count = in.readVarLong();
+		return new Iterator<T>() {
+			private long remaining = count;
+
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+
+			public T next() {
+				if (remaining == 0) {
+					throw new NoSuchElementException();
+				}
+				remaining--;
+				try {
+					return in.read(codec);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A sorted run spilled to disk
+	 */
+	private static class Run {
+		final File file;
+		final long count;
+
+		Run(File file, long count) {
+			this.file = file;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Head of one run during a merge
+	 * Ordered in reverse, as MyHeap is a max heap and the merge needs the smallest head;
+	 * ties go to the earlier run so that the sort is stable
+	 */
+	private class Cursor implements Comparable<Cursor> {
+		private final Snapshot.Reader in;
+		private final int order;	// position of the run among those merged
+		private long remaining;
+		T current;
+
+		Cursor(ReadableByteChannel channel, int order) throws IOException {
+			this.in = new Snapshot.Reader(channel, Snapshot.SORTED_RUN);
+			this.order = order;
+			this.remaining = in.readVarLong();
+		}
+
+		/**
+		 * Moves to the next item of the run
+		 * @return false if the run is exhausted
+		 */
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				current = null;
+				return false;
+			}
+			remaining--;
+			current = in.read(codec);
+			return true;
+		}
+
+		public int compareTo(Cursor other) {
+			int cmp = other.current.compareTo(current);
+			return (cmp != 0)? cmp: Integer.compare(other.order, order);
+		}
+	}
+
+	/**
+	 * Main method to test the sorter
+	 * 	args[0]: number of items (default 5,000,000)
+	 * 	args[1]: run length (default 500,000)
+	 * 	args[2]: fan-in (default 4, forcing an intermediate merge pass)
+	 */
+	public static void main(String[] args) throws IOException {
+		final long n = (args.length > 0)? Long.parseLong(args[0]): 5000000;
+		int runLength = (args.length > 1)? Integer.parseInt(args[1]): 500000;
+		int fanIn = (args.length > 2)? Integer.parseInt(args[2]): 4;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		Iterator<Integer> input = new Iterator<Integer>() {
+			private final Random random = new Random(42);
+			private long produced = 0;
+
+			public boolean hasNext() {
+				return produced < n;
+			}
+
+			public Integer next() {
+				produced++;
+				return random.nextInt();
+			}
+		};
+		File output = File.createTempFile("sorted", ".bin");
+		output.deleteOnExit();
+		ExternalSorter<Integer> sorter =
+				new ExternalSorter<Integer>(Snapshot.INTEGER, runLength, fanIn, null, threads);
+		long start = System.nanoTime();
+		long sorted;
+		try (FileChannel channel = FileChannel.open(output.toPath(),
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			sorted = sorter.sort(input, channel);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		/* verify the output is sorted and complete */
+		long count = 0;
+		boolean ordered = true;
+		try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.READ)) {
+			Integer previous = null;
+			for (Iterator<Integer> it = read(channel, Snapshot.INTEGER); it.hasNext(); count++) {
+				Integer item = it.next();
+				if (previous != null && previous > item) {
+					ordered = false;
+				}
+				previous = item;
+			}
+		}
+		System.out.println("Sorted " + sorted + " items in " + elapsed / 1000000 + "ms with "
+				+ ((n + runLength - 1) / runLength) + " runs, fan-in " + fanIn + ", " + threads
+				+ " threads; read back " + count + " items, ordered: " + ordered);
+	}
+}
@@ -0,0 +1,409 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/*
+ * Memory footprint report and regression check for the data structures in this repo
+ * 	Each structure is built at several sizes holding distinct boxed Integers
+ * 	(or Strings where it needs them), then measured two ways:
+ * 		retained size:	every object reachable from the structure, elements included,
+ * 						sized from its class layout as HotSpot lays it out
+ * 						(header, fields packed, alignment) and counted per class
+ * 		heap delta:		used heap after a full GC, before and after building it
+ * 						(only at the larger sizes, where GC noise averages out)
+ * 	and printed as a bytes per element table, with a class histogram per structure
+ * 	Exits with status 1 when a structure's retained bytes per element at the largest
+ * 	size exceed its baseline by more than TOLERANCE, so it can gate a build
+ * 	Baselines assume compressed oops and class pointers with 8 byte alignment, the
+ * 	default below 32GB of heap; under another layout the table is printed unchecked
+ * 	Reading the private fields of JDK classes (String, ArrayList, ...) needs their
+ * 	packages opened, so the suite relaunches itself with --add-opens when they are not
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class Footprint {
+	private static final double TOLERANCE = 0.10;
+	private static final int[] SIZES = {1000, 100000, 1000000};
+	private static final int HEAP_DELTA_MIN_SIZE = 100000;
+	private static final String[] OPENED = {"java.lang", "java.util", "java.util.concurrent",
+			"java.util.concurrent.atomic", "java.util.concurrent.locks"};
+
+	/* object layout of the running VM */
+	private final int referenceSize;
+	private final int headerSize;
+	private final int arrayHeaderSize;
+	private final int alignment;
+	private final boolean defaultLayout;
+
+	private final Map<Class<?>, Long> shallowSizes = new HashMap<Class<?>, Long>();
+	private final Map<Class<?>, Field[]> referenceFields = new HashMap<Class<?>, Field[]>();
+
+	public Footprint() {
+		HotSpotDiagnosticMXBean vm = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+		boolean compressedOops = Boolean.parseBoolean(vm.getVMOption("UseCompressedOops").getValue());
+		boolean compressedClasses =
+				Boolean.parseBoolean(vm.getVMOption("UseCompressedClassPointers").getValue());
+		alignment = Integer.parseInt(vm.getVMOption("ObjectAlignmentInBytes").getValue());
+		referenceSize = compressedOops? 4: 8;
+		headerSize = compressedClasses? 12: 16;		// mark word + class pointer
+		arrayHeaderSize = headerSize + 4;			// + length
+		defaultLayout = compressedOops && compressedClasses && alignment == 8;
+	}
+
+	/**
+	 * Retained size of everything reachable from root, with a histogram per class
+	 */
+	public Measurement measure(Object root) {
+		Measurement measurement = new Measurement();
+		IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+		ArrayDeque<Object> pending = new ArrayDeque<Object>();
+		pending.push(root);
+		visited.put(root, Boolean.TRUE);
+		while (!pending.isEmpty()) {
+			Object object = pending.pop();
+			Class<?> type = object.getClass();
+			long size;
+			if (type.isArray()) {
+				int length = Array.getLength(object);
+				Class<?> component = type.getComponentType();
+				size = align(arrayHeaderSize + (long) length * sizeOf(component));
+				if (!component.isPrimitive()) {
+					for (Object element: (Object[]) object) {
+						visit(element, visited, pending);
+					}
+				}
+			}
+			else {
+				size = shallowSize(type);
+				for (Field field: referenceFields(type)) {
+					try {
+						visit(field.get(object), visited, pending);
+					}
+					catch (IllegalAccessException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+			measurement.add(type, size);
+		}
+		return measurement;
+	}
+
+	private static void visit(Object object, IdentityHashMap<Object, Boolean> visited,
+			ArrayDeque<Object> pending) {
+		/* classes and enum constants are shared by the whole VM, not retained */
+		if (object == null || object instanceof Class || object instanceof Enum) {
+			return;
+		}
+		if (visited.put(object, Boolean.TRUE) == null) {
+			pending.push(object);
+		}
+	}
+
+	/**
+	 * Size of an instance: header and instance fields of the class and its
+	 * superclasses, packed without gaps, rounded up to the alignment
+	 */
+	private long shallowSize(Class<?> type) {
+		Long cached = shallowSizes.get(type);
+		if (cached != null) {
+			return cached;
+		}
+		long size = headerSize;
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Field field: c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) {
+					size += sizeOf(field.getType());
+				}
+			}
+		}
+		size = align(size);
+		shallowSizes.put(type, size);
+		return size;
+	}
+
+	/**
+	 * Instance fields holding references, of the class and its superclasses
+	 */
+	private Field[] referenceFields(Class<?> type) {
+		Field[] cached = referenceFields.get(type);
+		if (cached != null) {
+			return cached;
+		}
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Field field: c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+					try {
+						field.setAccessible(true);
+					}
+					catch (InaccessibleObjectException e) {
+						throw new IllegalStateException("cannot read " + field
+								+ ", its package must be opened with --add-opens", e);
+					}
+					fields.add(field);
+				}
+			}
+		}
+		Field[] result = fields.toArray(new Field[0]);
+		referenceFields.put(type, result);
+		return result;
+	}
+
+	private int sizeOf(Class<?> type) {
+		if (type == long.class || type == double.class) return 8;
+		if (type == int.class || type == float.class) return 4;
+		if (type == short.class || type == char.class) return 2;
+		if (type == byte.class || type == boolean.class) return 1;
+		return referenceSize;
+	}
+
+	private long align(long size) {
+		return (size + alignment - 1) / alignment * alignment;
+	}
+
+	/**
+	 * Retained size, object count and histogram of one measured structure
+	 */
+	public static class Measurement {
+		public long bytes;
+		public long objects;
+		private final Map<Class<?>, long[]> histogram = new HashMap<Class<?>, long[]>();	// count, bytes
+
+		void add(Class<?> type, long size) {
+			bytes += size;
+			objects++;
+			long[] entry = histogram.get(type);
+			if (entry == null) {
+				entry = new long[2];
+				histogram.put(type, entry);
+			}
+			entry[0]++;
+			entry[1] += size;
+		}
+
+		/**
+		 * @return the classes taking the most bytes, as "count x Class (bytes)" per element
+		 */
+		public String topClasses(int limit, int elements) {
+			List<Map.Entry<Class<?>, long[]>> entries =
+					new ArrayList<Map.Entry<Class<?>, long[]>>(histogram.entrySet());
+			entries.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+				long[] entry = entries.get(i).getValue();
+				if (entry[1] < elements / 10) {
+					break;	// below 0.1 byte per element, e.g. the structure's own object
+				}
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(String.format("%.2f x %s (%.1f B)", entry[0] / (double) elements,
+						entries.get(i).getKey().getSimpleName(), entry[1] / (double) elements));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * A structure under measurement
+	 */
+	private static class Subject {
+		final String name;
+		final IntFunction<Object> builder;	// builds it holding n elements
+		final double baseline;				// retained bytes per element at the largest size
+
+		Subject(String name, double baseline, IntFunction<Object> builder) {
+			this.name = name;
+			this.builder = builder;
+			this.baseline = baseline;
+		}
+	}
+
+	/**
+	 * Distinct boxed elements, outside the Integer cache
+	 */
+	private static Integer element(int i) {
+		return Integer.valueOf(1000 + i * 7);
+	}
+
+	private static List<Subject> subjects() {
+		List<Subject> subjects = new ArrayList<Subject>();
+		subjects.add(new Subject("AVLTree", 96, n -> {
+			AVLTree<Integer> tree = new AVLTree<Integer>();
+			for (int i = 0; i < n; i++) tree.insert(element(i));
+			return tree;
+		}));
+		subjects.add(new Subject("AVLSequence", 56, n -> {
+			AVLSequence<Integer> sequence = new AVLSequence<Integer>();
+			for (int i = 0; i < n; i++) sequence.add(element(i));
+			return sequence;
+		}));
+		subjects.add(new Subject("FrozenIndex", 20, n -> {
+			AVLTree<Integer> tree = new AVLTree<Integer>();
+			for (int i = 0; i < n; i++) tree.insert(element(i));
+			return tree.freeze();
+		}));
+		subjects.add(new Subject("FrozenIndex.OfLong", 2.4, n -> {
+			AVLTree<Long> tree = new AVLTree<Long>();
+			for (int i = 0; i < n; i++) tree.insert((long) element(i));
+			return AVLTree.freezeLongs(tree, 16);
+		}));
+		subjects.add(new Subject("BPlusTree", 26, n -> {
+			BPlusTree<Integer> tree = new BPlusTree<Integer>();
+			for (int i = 0; i < n; i++) tree.insert(element(i));
+			return tree;
+		}));
+		subjects.add(new Subject("ConcurrentSkipList", 155, n -> {
+			ConcurrentSkipList<Integer> list = new ConcurrentSkipList<Integer>();
+			for (int i = 0; i < n; i++) list.insert(element(i));
+			return list;
+		}));
+		subjects.add(new Subject("MyHashMap", 48.5, n -> {
+			MyHashMap<Integer, Integer> map = new MyHashMap<Integer, Integer>();
+			for (int i = 0; i < n; i++) {
+				Integer key = element(i);
+				map.put(key, key);	// value shared with the key, so only the key box counts
+			}
+			return map;
+		}));
+		subjects.add(new Subject("MyHeap", 21, n -> {
+			MyHeap<Integer> heap = new MyHeap<Integer>();
+			for (int i = 0; i < n; i++) heap.offer(element(i));
+			return heap;
+		}));
+		subjects.add(new Subject("MyQueue", 40, n -> {
+			MyQueue queue = new MyQueue();
+			for (int i = 0; i < n; i++) queue.enqueue(element(i));
+			return queue;
+		}));
+		subjects.add(new Subject("MyStack", 40, n -> {
+			MyStack stack = new MyStack();
+			for (int i = 0; i < n; i++) stack.push(element(i));
+			return stack;
+		}));
+		subjects.add(new Subject("NodePool.Queue", 24.5, n -> {
+			NodePool.Queue queue = new NodePool().newQueue();
+			for (int i = 0; i < n; i++) queue.enqueue(element(i));
+			return queue;
+		}));
+		subjects.add(new Subject("AdaptiveRadixTree", 82.5, n -> {
+			AdaptiveRadixTree tree = new AdaptiveRadixTree();
+			for (int i = 0; i < n; i++) tree.insert("/srv/data/" + (i % 1000) + "/" + i);
+			return tree;
+		}));
+		return subjects;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * @return true if every package read by the walker is open to this code
+	 */
+	private static boolean packagesOpened() {
+		Module base = Object.class.getModule();
+		for (String name: OPENED) {
+			if (!base.isOpen(name, Footprint.class.getModule())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the suite in a new VM with the JDK packages opened
+	 * @return its exit status
+	 */
+	private static int relaunch(String[] args) throws Exception {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + "/bin/java");
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		for (String name: OPENED) {
+			command.add("--add-opens");
+			command.add("java.base/" + name + "=ALL-UNNAMED");
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("Footprint");
+		for (String arg: args) {
+			command.add(arg);
+		}
+		return new ProcessBuilder(command).inheritIO().start().waitFor();
+	}
+
+	/**
+	 * Main method: prints the table and exits with status 1 on a regression
+	 */
+	public static void main(String[] args) throws Exception {
+		if (!packagesOpened()) {
+			System.exit(relaunch(args));
+		}
+		Footprint footprint = new Footprint();
+		int largest = SIZES[SIZES.length - 1];
+		StringBuilder header = new StringBuilder(String.format("%-20s", "bytes/element"));
+		for (int n: SIZES) {
+			header.append(String.format("%12d", n));
+		}
+		header.append(String.format("%12s%10s%10s", "heap delta", "baseline", ""));
+		System.out.println(header);
+
+		List<String> regressions = new ArrayList<String>();
+		List<String> histograms = new ArrayList<String>();
+		for (Subject subject: subjects()) {
+			StringBuilder row = new StringBuilder(String.format("%-20s", subject.name));
+			double retained = 0;
+			String heapDelta = "-";
+			for (int n: SIZES) {
+				long before = (n >= HEAP_DELTA_MIN_SIZE)? usedMemory(): 0;
+				Object structure = subject.builder.apply(n);
+				if (n >= HEAP_DELTA_MIN_SIZE) {
+					heapDelta = String.format("%.1f", (usedMemory() - before) / (double) n);
+				}
+				Measurement measurement = footprint.measure(structure);
+				retained = measurement.bytes / (double) n;
+				row.append(String.format("%12.1f", retained));
+				if (n == largest) {
+					histograms.add(String.format("%-20s%s", subject.name, measurement.topClasses(3, n)));
+				}
+			}
+			boolean regressed = footprint.defaultLayout && retained > subject.baseline * (1 + TOLERANCE);
+			row.append(String.format("%12s%10.1f%10s", heapDelta, subject.baseline,
+					regressed? "REGRESSED": ""));
+			System.out.println(row);
+			if (regressed) {
+				regressions.add(subject.name);
+			}
+		}
+		System.out.println();
+		System.out.println("per element at " + largest + ", largest classes:");
+		for (String histogram: histograms) {
+			System.out.println(histogram);
+		}
+		if (!footprint.defaultLayout) {
+			System.out.println("non-default object layout, baselines not checked");
+		}
+		if (!regressions.isEmpty()) {
+			System.out.println("footprint regressed beyond " + (int) (TOLERANCE * 100) + "%: " + regressions);
+			System.exit(1);
+		}
+	}
+}
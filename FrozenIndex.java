@@ -0,0 +1,329 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Immutable sorted index in Eytzinger layout, made by freezing an AVLTree
+ * 	The sorted data is stored in one array in the order of a breadth-first walk of
+ * 	the perfectly balanced tree over it: the children of position k are 2k and 2k + 1
+ * 	so a search reads positions 1, 2 or 3, 4 to 7... whose first levels share
+ * 	cache lines, and whose next level sits at a predictable address, instead of
+ * 	following pointers to TreeNodes scattered over the heap
+ * 	The descent has no early exit and no data-dependent branch:
+ * 		k = 2k + (a[k] < x), then the trailing one bits of k are undone
+ * 	leaving the position of the first item not less than x
+ * 	search is done in O[log (N)], with about log (N) / 2 cache misses fewer than a tree
+ * 	built in O[N] from the in-order walk of the tree
+ * 	OfLong does the same on a long[], without boxes or compareTo calls, and can
+ * 	delta-compress its keys: blocks of sorted keys store their first key in the
+ * 	Eytzinger array and the gaps to the others as varints, decoded on lookup
+ */
+
+/**
+ * @author Jin Zhe
+ * @param <T>	generic type for the type of objects in the index
+ */
+class FrozenIndex <T extends Comparable<T>> {
+	private final Object[] tree;	// 1-based, tree[0] unused
+	private final int size;
+
+	/**
+	 * Builds the index from data in sorted order
+	 * O[N]
+	 */
+	FrozenIndex(List<T> sorted) {
+		size = sorted.size();
+		tree = new Object[size + 1];
+		fill(sorted.toArray(), tree, 0, 1);
+	}
+
+	/**
+	 * Places sorted[from...] in the subtree rooted at k by an in-order walk
+	 * Recursion depth is the height of the tree, O[log (N)]
+	 * @return index in sorted of the next item to place
+	 */
+	private static int fill(Object[] sorted, Object[] tree, int from, int k) {
+		if (k < tree.length) {
+			from = fill(sorted, tree, from, 2 * k);
+			tree[k] = sorted[from++];
+			from = fill(sorted, tree, from, 2 * k + 1);
+		}
+		return from;
+	}
+
+	/**
+	 * Position of the first item not less than data, 0 if none
+	 */
+	@SuppressWarnings("unchecked")
+	private int lowerBound(T data) {
+		Object[] tree = this.tree;
+		int k = 1;
+		while (k <= size) {
+			k = 2 * k + ((((T) tree[k]).compareTo(data) < 0)? 1: 0);
+		}
+		/* the last left turn was at the first item not less than data */
+		return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+	}
+
+	/**
+	 * search index for given data
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean contains(T data) {
+		int k = lowerBound(data);
+		return k != 0 && ((T) tree[k]).compareTo(data) == 0;
+	}
+
+	/**
+	 * @return smallest item not less than data, or null if none
+	 */
+	@SuppressWarnings("unchecked")
+	public T ceiling(T data) {
+		int k = lowerBound(data);
+		return (k == 0)? null: (T) tree[k];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Immutable sorted index of long keys, optionally delta-compressed
+	 */
+	public static class OfLong {
+		private final long[] tree;			// 1-based, keys or first keys of blocks
+		private final int size;
+		/* delta compression only, null otherwise */
+		private final int[] blockOf;		// block number of each tree position
+		private final long[] firsts;		// first key of each block, in order
+		private final int[] offsets;		// start of each block's gaps, one past the last block
+		private final byte[] gaps;			// varint gaps between consecutive keys of each block
+
+		/**
+		 * Builds the index from keys in ascending order
+		 * O[N]
+		 * @param blockSize	keys per delta-compressed block, 1 for no compression
+		 */
+		OfLong(long[] sorted, int blockSize) {
+			if (blockSize < 1) {
+				throw new IllegalArgumentException("block size " + blockSize);
+			}
+			size = sorted.length;
+			if (blockSize == 1) {
+				tree = new long[size + 1];
+				fill(sorted, tree, 0, 1);
+				blockOf = offsets = null;
+				firsts = null;
+				gaps = null;
+				return;
+			}
+			int blocks = (size + blockSize - 1) / blockSize;
+			firsts = new long[blocks];
+			offsets = new int[blocks + 1];
+			ByteBuffer bytes = ByteBuffer.allocate(Math.max(size, 16));
+			for (int b = 0; b < blocks; b++) {
+				int start = b * blockSize;
+				int end = Math.min(start + blockSize, size);
+				firsts[b] = sorted[start];
+				offsets[b] = bytes.position();
+				for (int i = start + 1; i < end; i++) {
+					if (bytes.remaining() < 10) {
+						ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+						bytes.flip();
+						bytes = larger.put(bytes);
+					}
+					Snapshot.putVarLong(bytes, sorted[i] - sorted[i - 1]);
+				}
+			}
+			offsets[blocks] = bytes.position();
+			gaps = Arrays.copyOf(bytes.array(), bytes.position());
+			tree = new long[blocks + 1];
+			fill(firsts, tree, 0, 1);
+			int[] numbers = new int[blocks];
+			for (int b = 0; b < blocks; b++) {
+				numbers[b] = b;
+			}
+			blockOf = new int[blocks + 1];
+			fillInts(numbers, blockOf, 0, 1);
+		}
+
+		/**
+		 * Builds the index from the tree's keys
+		 */
+		OfLong(AVLTree<Long> source, int blockSize) {
+			this(toArray(source), blockSize);
+		}
+
+		private static long[] toArray(AVLTree<Long> source) {
+			long[] sorted = new long[source.getWeight()];
+			int i = 0;
+			for (Long key: source) {
+				sorted[i++] = key;
+			}
+			return sorted;
+		}
+
+		private static int fill(long[] sorted, long[] tree, int from, int k) {
+			if (k < tree.length) {
+				from = fill(sorted, tree, from, 2 * k);
+				tree[k] = sorted[from++];
+				from = fill(sorted, tree, from, 2 * k + 1);
+			}
+			return from;
+		}
+
+		private static int fillInts(int[] sorted, int[] tree, int from, int k) {
+			if (k < tree.length) {
+				from = fillInts(sorted, tree, from, 2 * k);
+				tree[k] = sorted[from++];
+				from = fillInts(sorted, tree, from, 2 * k + 1);
+			}
+			return from;
+		}
+
+		/**
+		 * Position of the first key greater than key (strictly if after), 0 if none
+		 */
+		private int bound(long key, boolean after) {
+			long[] tree = this.tree;
+			int n = tree.length - 1;
+			int k = 1;
+			if (after) {
+				while (k <= n) {
+					k = 2 * k + ((tree[k] <= key)? 1: 0);
+				}
+			}
+			else {
+				while (k <= n) {
+					k = 2 * k + ((tree[k] < key)? 1: 0);
+				}
+			}
+			return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+		}
+
+		/**
+		 * search index for given key
+		 */
+		public boolean contains(long key) {
+			if (gaps == null) {
+				int k = bound(key, false);
+				return k != 0 && tree[k] == key;
+			}
+			/* the block holding key is the one before the first block starting after it */
+			int k = bound(key, true);
+			int block = ((k == 0)? offsets.length - 1: blockOf[k]) - 1;
+			if (block < 0) {
+				return false;	// below the first key
+			}
+			long value = firsts[block];
+			int position = offsets[block];
+			int end = offsets[block + 1];
+			/* Snapshot.getVarLong inlined, as a ByteBuffer per lookup would cost more than the decoding */
+			while (value < key && position < end) {
+				long gap = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = gaps[position++];
+					gap |= (long) (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				value += gap;
+			}
+			return value == key;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		/**
+		 * @return bytes taken by the arrays, excluding their headers
+		 */
+		long arrayBytes() {
+			long bytes = 8L * tree.length;
+			if (gaps != null) {
+				bytes += 4L * blockOf.length + 8L * firsts.length + 4L * offsets.length + gaps.length;
+			}
+			return bytes;
+		}
+
+		/**
+		 * @return whether keys are delta-compressed
+		 */
+		public boolean isCompressed() {
+			return gaps != null;
+		}
+	}
+
+	/**
+	 * Main method: simple tests, then lookup throughput against the tree it was frozen from
+	 * 	args[0]: number of keys (default 1,000,000)
+	 * 	args[1]: number of lookups (default 2,000,000)
+	 */
+	public static void main(String[] args) {
+		AVLTree<Integer> small = new AVLTree<Integer>();
+		small.insert(new Integer[] {50, 20, 80, 10, 30, 70, 90});
+		FrozenIndex<Integer> frozen = small.freeze();
+		System.out.println("contains 30: " + frozen.contains(30) + ", contains 40: " + frozen.contains(40)
+				+ ", ceiling 40: " + frozen.ceiling(40) + ", ceiling 95: " + frozen.ceiling(95));
+
+		int n = (args.length > 0)? Integer.parseInt(args[0]): 1000000;
+		int lookups = (args.length > 1)? Integer.parseInt(args[1]): 2000000;
+		Random random = new Random(42);
+		AVLTree<Long> tree = new AVLTree<Long>();
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = i * 64L + random.nextInt(64);	// distinct, gaps of 64 on average
+		}
+		for (int i = n - 1; i > 0; i--) {	// inserted in random order
+			int j = random.nextInt(i + 1);
+			long key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+		}
+		for (long key: keys) {
+			tree.insert(key);
+		}
+		/* half the probes are present keys, half are random */
+		long[] probes = new long[lookups];
+		Long[] boxed = new Long[lookups];
+		for (int i = 0; i < lookups; i++) {
+			probes[i] = (i % 2 == 0)? keys[random.nextInt(n)]: (long) (random.nextDouble() * n * 64);
+			boxed[i] = probes[i];
+		}
+		FrozenIndex<Long> generic = tree.freeze();
+		FrozenIndex.OfLong primitive = AVLTree.freezeLongs(tree, 1);
+		FrozenIndex.OfLong compressed = AVLTree.freezeLongs(tree, 16);
+		System.out.printf("%,d keys: OfLong %.2f bytes/key, compressed (16 per block) %.2f bytes/key%n",
+				n, primitive.arrayBytes() / (double) n, compressed.arrayBytes() / (double) n);
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			int[] found = new int[4];
+			long[] nanos = new long[4];
+			long start = System.nanoTime();
+			for (Long probe: boxed) found[0] += tree.contains(probe)? 1: 0;
+			nanos[0] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (Long probe: boxed) found[1] += generic.contains(probe)? 1: 0;
+			nanos[1] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (long probe: probes) found[2] += primitive.contains(probe)? 1: 0;
+			nanos[2] = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (long probe: probes) found[3] += compressed.contains(probe)? 1: 0;
+			nanos[3] = System.nanoTime() - start;
+			System.out.printf("ns/lookup: AVLTree %.0f, FrozenIndex %.0f, OfLong %.0f, compressed %.0f; same results: %b%n",
+					nanos[0] / (double) lookups, nanos[1] / (double) lookups, nanos[2] / (double) lookups,
+					nanos[3] / (double) lookups, found[0] == found[1] && found[1] == found[2] && found[2] == found[3]);
+		}
+	}
+}
@@ -0,0 +1,367 @@
+import java.util.Random;
+
+/*
+ * Implementation of an interval tree, as an augmented AVL tree
+ * 	Holds closed intervals [low, high], each with an associated value
+ * 	Intervals are ordered by low endpoint, then high endpoint
+ * 	Each node additionally keeps the max high endpoint of its subtree,
+ * 	maintained through insertion, deletion and rotations
+ * 	Please note that endpoints can only be of comparable types
+ * 	insertion is done in O[log (N)]
+ * 	deletion is done in O[log (N)]
+ * 	overlap and stabbing queries are done in O[log (N) + K] for K results
+ * 	queries report results through a visitor and allocate nothing per visited node
+ */
+
+/**
+ * @author Jin Zhe
+ */
+class IntervalTree <T extends Comparable<T>, V> {
+	private TreeNode root;
+	private int size;
+
+	/**
+	 * Visitor receiving each interval found by a query
+	 */
+	public interface Visitor <T, V> {
+		void visit(T low, T high, V value);
+	}
+
+	/**
+	 * constructor: create an empty tree
+	 */
+	public IntervalTree() {
+		root = null;
+		size = 0;
+	}
+
+	/**
+	 * Inserts the interval [low, high] with its value
+	 */
+	public void insert(T low, T high, V value) {
+		if (low.compareTo(high) > 0) {
+			throw new IllegalArgumentException("low > high: [" + low + ", " + high + "]");
+		}
+		root = insert(root, new TreeNode(low, high, value));
+		size++;
+	}
+
+	/**
+	 * Recursively inserts a node in the subtree
+	 * @return updated root node of resulting subtree
+	 */
+	private TreeNode insert(TreeNode node, TreeNode newNode) {
+		/* base case: if subtree is empty, the new node is the subtree */
+		if (node == null) {
+			return newNode;
+		}
+		/* if interval is greater or equal, insert right */
+		if (compare(newNode.low, newNode.high, node) >= 0) {
+			node.rightChild = insert(node.rightChild, newNode);
+		}
+		/* else if interval is smaller, insert left */
+		else {
+			node.leftChild = insert(node.leftChild, newNode);
+		}
+		update(node);
+		return balance(node);
+	}
+
+	/**
+	 * Removes one interval equal to [low, high]
+	 * @return value of the removed interval, or null if there was none
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public V remove(T low, T high) {
+		TreeNode[] removed = new IntervalTree.TreeNode[1];
+		root = remove(root, low, high, removed);
+		if (removed[0] == null) {
+			return null;
+		}
+		size--;
+		return removed[0].value;
+	}
+
+	/**
+	 * Recursively removes a node from the subtree
+	 * @param removed	receives the removed node
+	 * @return updated root node of resulting subtree
+	 */
+	private TreeNode remove(TreeNode node, T low, T high, TreeNode[] removed) {
+		/* base case: interval not found */
+		if (node == null) {
+			return null;
+		}
+		int cmp = compare(low, high, node);
+		if (cmp < 0) {
+			node.leftChild = remove(node.leftChild, low, high, removed);
+		}
+		else if (cmp > 0) {
+			node.rightChild = remove(node.rightChild, low, high, removed);
+		}
+		else {
+			removed[0] = node;
+			/* at most one child: replace node by it */
+			if (node.leftChild == null) {
+				return node.rightChild;
+			}
+			if (node.rightChild == null) {
+				return node.leftChild;
+			}
+			/* else replace node by its in-order successor */
+			TreeNode successor = node.rightChild;
+			while (successor.leftChild != null) {
+				successor = successor.leftChild;
+			}
+			successor.rightChild = removeMin(node.rightChild);
+			successor.leftChild = node.leftChild;
+			node = successor;
+		}
+		update(node);
+		return balance(node);
+	}
+
+	/**
+	 * Unlinks the leftmost node of the subtree
+	 * @return updated root node of resulting subtree
+	 */
+	private TreeNode removeMin(TreeNode node) {
+		if (node.leftChild == null) {
+			return node.rightChild;
+		}
+		node.leftChild = removeMin(node.leftChild);
+		update(node);
+		return balance(node);
+	}
+
+	/**
+	 * Visits every interval overlapping [low, high]
+	 * Prunes every subtree whose max endpoint is below low, or whose intervals start after high
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void overlapping(T low, T high, Visitor<? super T, ? super V> visitor) {
+		if (root == null) {
+			return;
+		}
+		/* explicit stack: one pending right subtree per level, plus the current node */
+		TreeNode[] stack = new IntervalTree.TreeNode[root.height + 1];
+		int depth = 0;
+		stack[depth++] = root;
+		while (depth > 0) {
+			TreeNode node = stack[--depth];
+			if (node.max.compareTo(low) < 0) {
+				continue;	// nothing in this subtree reaches low
+			}
+			boolean startsAfter = node.low.compareTo(high) > 0;
+			/* right subtree starts even later, so only search it if node starts in time */
+			if (!startsAfter && node.rightChild != null) {
+				stack[depth++] = node.rightChild;
+			}
+			if (!startsAfter && node.high.compareTo(low) >= 0) {
+				visitor.visit(node.low, node.high, node.value);
+			}
+			if (node.leftChild != null) {
+				stack[depth++] = node.leftChild;
+			}
+		}
+	}
+
+	/**
+	 * Visits every interval containing point (stabbing query)
+	 */
+	public void stab(T point, Visitor<? super T, ? super V> visitor) {
+		overlapping(point, point, visitor);
+	}
+
+	/**
+	 * Returns true if any interval overlaps [low, high]
+	 * O[log (N)], as the max endpoints tell which single path to follow
+	 */
+	public boolean overlapsAny(T low, T high) {
+		TreeNode node = root;
+		while (node != null) {
+			if (node.low.compareTo(high) <= 0 && node.high.compareTo(low) >= 0) {
+				return true;
+			}
+			/* if left subtree reaches low, any overlap not found there cannot be on the right */
+			if (node.leftChild != null && node.leftChild.max.compareTo(low) >= 0) {
+				node = node.leftChild;
+			}
+			else {
+				node = node.rightChild;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Orders interval [low, high] against the node's interval
+	 */
+	private int compare(T low, T high, TreeNode node) {
+		int cmp = low.compareTo(node.low);
+		return (cmp != 0)? cmp: high.compareTo(node.high);
+	}
+
+	/**
+	 * Recomputes height and max endpoint of node from its children
+	 */
+	private void update(TreeNode node) {
+		node.height = Math.max(height(node.leftChild), height(node.rightChild)) + 1;
+		T max = node.high;
+		if (node.leftChild != null && node.leftChild.max.compareTo(max) > 0) {
+			max = node.leftChild.max;
+		}
+		if (node.rightChild != null && node.rightChild.max.compareTo(max) > 0) {
+			max = node.rightChild.max;
+		}
+		node.max = max;
+	}
+
+	/**
+	 *  Balances the subtree via rotations
+	 *  Constant time operation
+	 */
+	private TreeNode balance(TreeNode node) {
+		int balanceFactor = getBalanceFactor(node);
+		if (balanceFactor == 2) {
+			if (getBalanceFactor(node.leftChild) < 0) {		// LR case
+				node.leftChild = rotateLeft(node.leftChild);
+			}
+			return rotateRight(node);						// LL case
+		}
+		else if (balanceFactor == -2) {
+			if (getBalanceFactor(node.rightChild) > 0) {	// RL case
+				node.rightChild = rotateRight(node.rightChild);
+			}
+			return rotateLeft(node);						// RR case
+		}
+		/* else no re-balancing is needed */
+		return node;
+	}
+
+	/**
+	 * Returns the balance factor of the subtree
+	 */
+	private int getBalanceFactor(TreeNode node) {
+		return (node == null)? 0: height(node.leftChild) - height(node.rightChild);
+	}
+
+	private int height(TreeNode node) {
+		return (node == null)? 0: node.height;
+	}
+
+	/**
+	 * Left rotate the given subtree and return the new root
+	 * Constant time operation, updates max endpoints bottom up
+	 */
+	private TreeNode rotateLeft(TreeNode node) {
+		TreeNode temp = node.rightChild;
+		node.rightChild = temp.leftChild;
+		temp.leftChild = node;
+		update(node);
+		update(temp);
+		return temp;
+	}
+
+	/**
+	 * Right rotate the given subtree and return the new root
+	 * Constant time operation, updates max endpoints bottom up
+	 */
+	private TreeNode rotateRight(TreeNode node) {
+		TreeNode temp = node.leftChild;
+		node.leftChild = temp.rightChild;
+		temp.rightChild = node;
+		update(node);
+		update(temp);
+		return temp;
+	}
+
+	/**
+	 * Returns true if tree is empty, else false
+	 */
+	public boolean isEmpty() {
+		return (root == null);
+	}
+
+	/**
+	 * Returns height of tree
+	 */
+	public int getHeight() {
+		return height(root);
+	}
+
+	/**
+	 * Returns number of intervals
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * TreeNode class
+	 */
+	private class TreeNode {
+		protected final T low, high;	// the interval
+		protected final V value;
+		protected T max;				// max high endpoint in subtree with node as root
+		protected TreeNode leftChild, rightChild;
+		protected int height;			// height of subtree with node as root
+
+		public TreeNode(T low, T high, V value) {
+			this.low = low;
+			this.high = high;
+			this.value = value;
+			this.max = high;
+			this.height = 1;
+		}
+	}
+
+	/**
+	 * Main method to test the data structure against a brute force scan
+	 */
+	public static void main(String[] args) {
+		IntervalTree<Integer, String> leases = new IntervalTree<Integer, String>();
+		leases.insert(15, 20, "a");
+		leases.insert(10, 30, "b");
+		leases.insert(17, 19, "c");
+		leases.insert(5, 20, "d");
+		leases.insert(12, 15, "e");
+		leases.insert(30, 40, "f");
+		System.out.print("Overlapping [14, 16]: ");
+		leases.overlapping(14, 16, (low, high, value) ->
+				System.out.print(value + "[" + low + ", " + high + "] "));
+		System.out.print("\nStabbing 35: ");
+		leases.stab(35, (low, high, value) -> System.out.print(value + " "));
+		System.out.println("\nRemoved [10, 30]: " + leases.remove(10, 30)
+				+ ", overlaps [21, 29]: " + leases.overlapsAny(21, 29));
+
+		/* randomized check against brute force */
+		int n = 100000;
+		Random random = new Random(7);
+		int[][] intervals = new int[n][];
+		IntervalTree<Integer, Integer> tree = new IntervalTree<Integer, Integer>();
+		for (int i = 0; i < n; i++) {
+			int low = random.nextInt(1000000);
+			intervals[i] = new int[] {low, low + random.nextInt(1000)};
+			tree.insert(intervals[i][0], intervals[i][1], i);
+		}
+		for (int i = 0; i < n; i += 2) {	// remove every other interval
+			tree.remove(intervals[i][0], intervals[i][1]);
+			intervals[i] = null;
+		}
+		final long[] found = {0};
+		long expected = 0;
+		for (int q = 0; q < 1000; q++) {
+			int low = random.nextInt(1000000);
+			int high = low + random.nextInt(5000);
+			tree.overlapping(low, high, (l, h, value) -> found[0]++);
+			for (int[] interval: intervals) {
+				if (interval != null && interval[0] <= high && interval[1] >= low) {
+					expected++;
+				}
+			}
+		}
+		System.out.println("Randomized: " + found[0] + " found, " + expected + " expected, size "
+				+ tree.size() + ", height " + tree.getHeight());
+	}
+}
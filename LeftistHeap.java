@@ -0,0 +1,218 @@
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/*
+ * Implementation of a leftist heap, a max heap like MyHeap that can be merged
+ * 	A heap-ordered binary tree where every node's left child has a rank at least
+ * 	that of its right child, rank being the length of the rightmost path, so the
+ * 	rightmost path of a heap of N items has at most log (N + 1) nodes
+ * 	merge walks down the rightmost paths of both heaps, linking along the way, then
+ * 	swaps children back up wherever the leftist property broke
+ * 	merge is done in O[log (N)], the other heap being emptied into this one
+ * 	insertion and poll are merges, in O[log (N)]
+ * 	built from a MyHeap in O[N], by merging singletons pairwise in rounds
+ */
+
+/**
+ * @author Jin Zhe
+ * @param <T>	generic type for the type of objects to be inserted
+ */
+class LeftistHeap <T extends Comparable<T>> {
+	private Node<T> root;
+	private int size;
+	/* rightmost paths have at most 31 nodes each, so a merge path at most 62 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final Node<T>[] path = new Node[64];	// reused by every merge
+
+	public LeftistHeap() {
+		root = null;
+	}
+
+	/**
+	 * Builds a heap holding the items of a MyHeap, which is left unchanged
+	 * O(N)
+	 */
+	public LeftistHeap(MyHeap<T> heap) {
+		ArrayDeque<Node<T>> queue = new ArrayDeque<Node<T>>();
+		for (int i = 0; i < heap.size(); i++) {
+			queue.add(new Node<T>(heap.get(i)));
+		}
+		/* each round halves the number of heaps, merging ones of similar sizes */
+		while (queue.size() > 1) {
+			queue.add(merge(queue.poll(), queue.poll()));
+		}
+		root = queue.poll();
+		size = heap.size();
+	}
+
+	/**
+	 * Inserts item to the heap
+	 * O(log N)
+	 * @param item	item to be inserted
+	 */
+	public void offer(T item) {
+		root = merge(root, new Node<T>(item));
+		size++;
+	}
+
+	/**
+	 * Retrieves and removes the head of this queue
+	 * O(log N)
+	 * @return	head of queue or null if queue is empty
+	 */
+	public T poll() {
+		if (root == null) {
+			return null;
+		}
+		T item = root.item;
+		root = merge(root.left, root.right);
+		size--;
+		return item;
+	}
+
+	/**
+	 * Retrieves, but does not remove, the head of queue
+	 * @return	head of queue or null if queue is empty
+	 */
+	public T peek() {
+		return (root == null)? null: root.item;
+	}
+
+	/**
+	 * Moves every item of other into this heap, leaving other empty
+	 * O(log N)
+	 * @param other	heap to be merged, may not be this heap
+	 */
+	public void merge(LeftistHeap<T> other) {
+		if (other == this) {
+			throw new IllegalArgumentException("cannot merge a heap with itself");
+		}
+		root = merge(root, other.root);
+		size += other.size;
+		other.root = null;
+		other.size = 0;
+	}
+
+	/**
+	 * Merges two trees along their rightmost paths, without recursion or allocation
+	 * @return root of the merged tree
+	 */
+	private Node<T> merge(Node<T> a, Node<T> b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		/* walk down: the larger root keeps its left subtree and takes the rest on its right */
+		Node<T>[] path = this.path;
+		int depth = 0;
+		Node<T> result = null, parent = null;
+		while (a != null && b != null) {
+			if (a.item.compareTo(b.item) < 0) {
+				Node<T> temp = a;
+				a = b;
+				b = temp;
+			}
+			if (parent == null) result = a;
+			else parent.right = a;
+			path[depth++] = a;
+			parent = a;
+			a = a.right;
+		}
+		parent.right = (a != null)? a: b;
+		/* walk back up: restore the leftist property and the ranks */
+		while (depth > 0) {
+			Node<T> node = path[--depth];
+			path[depth] = null;	// keeps no polled node reachable
+			if (rank(node.left) < rank(node.right)) {
+				Node<T> temp = node.left;
+				node.left = node.right;
+				node.right = temp;
+			}
+			node.rank = rank(node.right) + 1;
+		}
+		return result;
+	}
+
+	private static int rank(Node<?> node) {
+		return (node == null)? 0: node.rank;
+	}
+
+	/**
+	 * Getter for current heap size
+	 * @return	the size of heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * Node class
+	 */
+	private static class Node<T> {
+		private final T item;
+		private Node<T> left, right;
+		private int rank = 1;	// length of the rightmost path
+
+		private Node(T item) {
+			this.item = item;
+		}
+	}
+
+	/**
+	 * Main method: simple tests, then consolidating sharded queues, which MyHeap
+	 * can only do by polling one heap into another
+	 * 	args[0]: number of shards (default 16)
+	 * 	args[1]: items per shard (default 250,000)
+	 */
+	public static void main(String[] args) {
+		LeftistHeap<Integer> heap = new LeftistHeap<Integer>();
+		heap.offer(1);
+		heap.offer(9);
+		heap.offer(4);
+		LeftistHeap<Integer> other = new LeftistHeap<Integer>();
+		other.offer(2);
+		other.offer(5);
+		heap.merge(other);
+		System.out.println("Merged size " + heap.size() + ", other size " + other.size());
+		System.out.println("Poll: " + heap.poll() + ", " + heap.poll() + ", " + heap.poll() + ", "
+				+ heap.poll() + ", " + heap.poll() + ", " + heap.poll());
+
+		int shards = (args.length > 0)? Integer.parseInt(args[0]): 16;
+		int perShard = (args.length > 1)? Integer.parseInt(args[1]): 250000;
+		Random random = new Random(42);
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			MyHeap<Integer>[] myHeaps = new MyHeap[shards];
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			LeftistHeap<Integer>[] leftistHeaps = new LeftistHeap[shards];
+			for (int s = 0; s < shards; s++) {
+				myHeaps[s] = new MyHeap<Integer>();
+				for (int i = 0; i < perShard; i++) {
+					myHeaps[s].offer(random.nextInt());
+				}
+				leftistHeaps[s] = new LeftistHeap<Integer>(myHeaps[s]);
+			}
+			long start = System.nanoTime();
+			for (int s = 1; s < shards; s++) {
+				while (myHeaps[s].size() > 0) {
+					myHeaps[0].offer(myHeaps[s].poll());
+				}
+			}
+			long polling = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int s = 1; s < shards; s++) {
+				leftistHeaps[0].merge(leftistHeaps[s]);
+			}
+			long merging = System.nanoTime() - start;
+			/* both consolidated queues must now poll the same items */
+			boolean same = myHeaps[0].size() == leftistHeaps[0].size();
+			while (same && myHeaps[0].size() > 0) {
+				same = myHeaps[0].poll().equals(leftistHeaps[0].poll());
+			}
+			System.out.printf("Consolidating %d shards of %,d: MyHeap polling %d ms, LeftistHeap merge %.3f ms, same order: %b%n",
+					shards, perShard, polling / 1000000, merging / 1e6, same);
+		}
+	}
+}
@@ -0,0 +1,374 @@
+import java.util.Arrays;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * Opt-in instrumentation for the data structures in this repo
+ * 	A structure only records into a Metrics instance once one is attached
+ * 	via its setMetrics method, otherwise every hook is a single null check
+ * 	Counters are plain fields, as none of the structures are thread safe
+ * 	Recorded per structure:
+ * 		MyHashMap:	probes per lookup, rehash count and duration,
+ * 					chain length histogram (computed when reported)
+ * 		AVLTree:	rotation count, height vs ideal height
+ * 		MyHeap:		sift depths and size high-water mark
+ * 		MyQueue/MyStack:	size high-water mark
+ * 	A Report is an immutable snapshot of the counters, which can also be
+ * 	committed as a JFR event so that degradation can be alerted upon
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class Metrics {
+	static final int HISTOGRAM_BUCKETS = 16;	// chain lengths >= 15 share the last bucket
+
+	private final String name;	// name used in reports and events
+	long operations;			// lookups, insertions and removals
+	long probes;				// entries visited by hashmap operations
+	long rehashes;
+	long rehashNanos;
+	long rotations;
+	long sifts;					// heap sift operations
+	long siftSteps;				// levels travelled by all sift operations
+	int maxSiftDepth;
+	int size;					// current size for structures that do not track it
+	int highWaterMark;
+
+	/**
+	 * Constructor
+	 * @param name	name identifying the instrumented structure
+	 */
+	public Metrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Records a hashmap operation which visited the given number of entries
+	 */
+	void recordProbes(int count) {
+		operations++;
+		probes += count;
+	}
+
+	/**
+	 * Records a batch of hashmap operations which visited the given number of entries
+	 */
+	void recordBatch(int count, long probes) {
+		operations += count;
+		this.probes += probes;
+	}
+
+	/**
+	 * Records a completed rehash
+	 */
+	void recordRehash(long nanos, int oldCapacity, int newCapacity) {
+		rehashes++;
+		rehashNanos += nanos;
+		RehashEvent event = new RehashEvent();
+		if (event.shouldCommit()) {
+			event.structure = name;
+			event.oldCapacity = oldCapacity;
+			event.newCapacity = newCapacity;
+			event.durationNanos = nanos;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records a tree insertion or lookup
+	 */
+	void recordOperation() {
+		operations++;
+	}
+
+	/**
+	 * Records a single tree rotation
+	 */
+	void recordRotation() {
+		rotations++;
+	}
+
+	/**
+	 * Records a heap sift travelling the given number of levels
+	 */
+	void recordSift(int depth) {
+		operations++;
+		sifts++;
+		siftSteps += depth;
+		if (depth > maxSiftDepth) {
+			maxSiftDepth = depth;
+		}
+	}
+
+	/**
+	 * Records the current size of a structure that tracks it itself
+	 */
+	void recordSize(int size) {
+		this.size = size;
+		if (size > highWaterMark) {
+			highWaterMark = size;
+		}
+	}
+
+	/**
+	 * Records an item being added to a structure without its own size
+	 */
+	void recordAdd() {
+		operations++;
+		recordSize(size + 1);
+	}
+
+	/**
+	 * Records an item being removed from a structure without its own size
+	 */
+	void recordRemove() {
+		operations++;
+		size--;
+	}
+
+	/**
+	 * Resets all counters, keeping the name
+	 */
+	public void reset() {
+		operations = probes = rehashes = rehashNanos = rotations = sifts = siftSteps = 0;
+		maxSiftDepth = 0;
+		highWaterMark = size;
+	}
+
+	/**
+	 * Builds a report from the counters alone
+	 */
+	public Report report() {
+		return new Report(this, -1, -1, null);
+	}
+
+	/**
+	 * Builds a report including the structural facts known by the structure
+	 * @param height			tree height, or -1 if not applicable
+	 * @param elements			number of elements, or -1 if unknown
+	 * @param chainHistogram	count of buckets per chain length, or null
+	 */
+	Report report(int height, int elements, long[] chainHistogram) {
+		return new Report(this, height, elements, chainHistogram);
+	}
+
+	/**
+	 * Immutable snapshot of the metrics of one structure
+	 */
+	public static class Report {
+		public final String name;
+		public final long operations;
+		public final long probes;
+		public final long rehashes;
+		public final long rehashNanos;
+		public final long rotations;
+		public final long sifts;
+		public final long siftSteps;
+		public final int maxSiftDepth;
+		public final int highWaterMark;
+		public final int height;		// -1 if not a tree
+		public final int elements;		// -1 if unknown
+		private final long[] chainHistogram;
+
+		private Report(Metrics metrics, int height, int elements, long[] chainHistogram) {
+			this.name = metrics.name;
+			this.operations = metrics.operations;
+			this.probes = metrics.probes;
+			this.rehashes = metrics.rehashes;
+			this.rehashNanos = metrics.rehashNanos;
+			this.rotations = metrics.rotations;
+			this.sifts = metrics.sifts;
+			this.siftSteps = metrics.siftSteps;
+			this.maxSiftDepth = metrics.maxSiftDepth;
+			this.highWaterMark = metrics.highWaterMark;
+			this.height = height;
+			this.elements = elements;
+			this.chainHistogram = chainHistogram;
+		}
+
+		/**
+		 * @return average entries visited per hashmap operation
+		 */
+		public double averageProbes() {
+			return operations == 0? 0: probes / (double) operations;
+		}
+
+		/**
+		 * @return average levels travelled per heap sift
+		 */
+		public double averageSiftDepth() {
+			return sifts == 0? 0: siftSteps / (double) sifts;
+		}
+
+		/**
+		 * @return height of a perfectly balanced tree holding the same elements
+		 */
+		public int idealHeight() {
+			return elements <= 0? 0: 32 - Integer.numberOfLeadingZeros(elements);
+		}
+
+		/**
+		 * @return ratio of actual to ideal height, 1.0 for a perfectly balanced tree
+		 */
+		public double heightRatio() {
+			return idealHeight() == 0? 1: height / (double) idealHeight();
+		}
+
+		/**
+		 * @return copy of the chain length histogram, index i counts buckets with i entries
+		 */
+		public long[] chainHistogram() {
+			return chainHistogram == null? null: chainHistogram.clone();
+		}
+
+		/**
+		 * @return longest chain observed, or -1 if not a hashmap
+		 */
+		public int longestChain() {
+			if (chainHistogram == null) {
+				return -1;
+			}
+			for (int i = chainHistogram.length - 1; i > 0; i--) {
+				if (chainHistogram[i] != 0) {
+					return i;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Emits this report as a JFR event
+		 */
+		public void commit() {
+			ReportEvent event = new ReportEvent();
+			if (event.shouldCommit()) {
+				event.structure = name;
+				event.operations = operations;
+				event.averageProbes = averageProbes();
+				event.longestChain = longestChain();
+				event.rehashes = rehashes;
+				event.rotations = rotations;
+				event.height = height;
+				event.idealHeight = idealHeight();
+				event.averageSiftDepth = averageSiftDepth();
+				event.maxSiftDepth = maxSiftDepth;
+				event.highWaterMark = highWaterMark;
+				event.commit();
+			}
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder(name).append(": operations=").append(operations);
+			if (chainHistogram != null) {
+				sb.append(", avgProbes=").append(String.format("%.2f", averageProbes()))
+				  .append(", rehashes=").append(rehashes)
+				  .append(", rehashMs=").append(rehashNanos / 1000000)
+				  .append(", chains=").append(Arrays.toString(chainHistogram));
+			}
+			if (height >= 0) {
+				sb.append(", rotations=").append(rotations)
+				  .append(", height=").append(height)
+				  .append(", idealHeight=").append(idealHeight());
+			}
+			if (sifts > 0) {
+				sb.append(", avgSiftDepth=").append(String.format("%.2f", averageSiftDepth()))
+				  .append(", maxSiftDepth=").append(maxSiftDepth);
+			}
+			if (highWaterMark > 0) {
+				sb.append(", highWaterMark=").append(highWaterMark);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * JFR event emitted on every hashmap rehash
+	 */
+	@Name("datastructures.Rehash")
+	@Label("Rehash")
+	@Category("Data Structures")
+	static class RehashEvent extends Event {
+		@Label("Structure")
+		String structure;
+		@Label("Old Capacity")
+		int oldCapacity;
+		@Label("New Capacity")
+		int newCapacity;
+		@Label("Duration (ns)")
+		long durationNanos;
+	}
+
+	/**
+	 * JFR event carrying a committed Report
+	 */
+	@Name("datastructures.Report")
+	@Label("Data Structure Metrics")
+	@Category("Data Structures")
+	static class ReportEvent extends Event {
+		@Label("Structure")
+		String structure;
+		@Label("Operations")
+		long operations;
+		@Label("Average Probes")
+		double averageProbes;
+		@Label("Longest Chain")
+		int longestChain;
+		@Label("Rehashes")
+		long rehashes;
+		@Label("Rotations")
+		long rotations;
+		@Label("Height")
+		int height;
+		@Label("Ideal Height")
+		int idealHeight;
+		@Label("Average Sift Depth")
+		double averageSiftDepth;
+		@Label("Max Sift Depth")
+		int maxSiftDepth;
+		@Label("High-Water Mark")
+		int highWaterMark;
+	}
+
+	/**
+	 * Main method to test the instrumentation
+	 */
+	public static void main(String[] args) {
+		MyHashMap<Integer, Integer> map = new MyHashMap<Integer, Integer>(2);
+		map.setMetrics(new Metrics("map"));
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		tree.setMetrics(new Metrics("tree"));
+		MyHeap<Integer> heap = new MyHeap<Integer>();
+		heap.setMetrics(new Metrics("heap"));
+		MyQueue queue = new MyQueue();
+		queue.setMetrics(new Metrics("queue"));
+		MyStack stack = new MyStack();
+		stack.setMetrics(new Metrics("stack"));
+
+		for (int i = 0; i < 100000; i++) {
+			map.put(i * 31, i);
+			tree.insert(i);
+			heap.offer(i % 1000);
+			queue.enqueue(i);
+			stack.push(i);
+			if (i % 3 == 0) {
+				queue.dequeue();
+				stack.pop();
+			}
+		}
+		for (int i = 0; i < 100000; i++) {
+			map.get(i);
+			tree.contains(i);
+			heap.poll();
+		}
+		Report[] reports = {map.getMetricsReport(), tree.getMetricsReport(),
+				heap.getMetricsReport(), queue.getMetricsReport(), stack.getMetricsReport()};
+		for (Report report: reports) {
+			System.out.println(report);
+			report.commit();
+		}
+	}
+}
@@ -0,0 +1,419 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue built on MyQueue, for producer/consumer pipelines
+ * 	Producers block (or time out) while the queue is full, which pushes back on them
+ * 	instead of letting the queue grow without bound, and consumers block while it is empty
+ * 	Parking is done with a ReentrantLock and two Conditions rather than synchronized,
+ * 	so waiting virtual threads unmount from their carrier instead of pinning it
+ * 	Wait times and occupancy are recorded to help tune capacities
+ * @param <E>	type of the queued items
+ */
+public class MyBlockingQueue<E> {
+	private final MyQueue queue = new MyQueue();
+	private final int capacity;
+	private int count;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/* statistics, guarded by lock */
+	private long puts, takes;
+	private long putWaits, takeWaits;			// number of times a producer/consumer had to park
+	private long putWaitNanos, takeWaitNanos;
+	private long occupancySum;					// sum of sizes observed after each put and take
+	private int highWaterMark;
+
+	/**
+	 * Constructor
+	 * @param capacity	maximum number of items held before producers block
+	 */
+	public MyBlockingQueue(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Inserts item, waiting as long as necessary for space
+	 */
+	public void put(E item) throws InterruptedException {
+		checkNotNull(item);
+		lock.lockInterruptibly();
+		try {
+			if (count == capacity) {
+				long start = System.nanoTime();
+				putWaits++;
+				try {
+					while (count == capacity) {
+						notFull.await();
+					}
+				}
+				finally {
+					putWaitNanos += System.nanoTime() - start;
+				}
+			}
+			enqueue(item);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts item if there is space, without waiting
+	 * @return true if inserted, false if the queue was full
+	 */
+	public boolean offer(E item) {
+		checkNotNull(item);
+		lock.lock();
+		try {
+			if (count == capacity) {
+				return false;
+			}
+			enqueue(item);
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Inserts item, waiting up to the given time for space
+	 * @return true if inserted, false if the time elapsed first
+	 */
+	public boolean offer(E item, long timeout, TimeUnit unit) throws InterruptedException {
+		checkNotNull(item);
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			if (count == capacity) {
+				long start = System.nanoTime();
+				putWaits++;
+				try {
+					while (count == capacity) {
+						if (nanos <= 0) {
+							return false;
+						}
+						nanos = notFull.awaitNanos(nanos);
+					}
+				}
+				finally {
+					putWaitNanos += System.nanoTime() - start;
+				}
+			}
+			enqueue(item);
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head, waiting as long as necessary for an item
+	 */
+	public E take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			if (count == 0) {
+				long start = System.nanoTime();
+				takeWaits++;
+				try {
+					while (count == 0) {
+						notEmpty.await();
+					}
+				}
+				finally {
+					takeWaitNanos += System.nanoTime() - start;
+				}
+			}
+			return dequeue();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head without waiting
+	 * @return head of queue or null if queue is empty
+	 */
+	public E poll() {
+		lock.lock();
+		try {
+			return (count == 0)? null: dequeue();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retrieves and removes the head, waiting up to the given time for an item
+	 * @return head of queue or null if the time elapsed first
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			if (count == 0) {
+				long start = System.nanoTime();
+				takeWaits++;
+				try {
+					while (count == 0) {
+						if (nanos <= 0) {
+							return null;
+						}
+						nanos = notEmpty.awaitNanos(nanos);
+					}
+				}
+				finally {
+					takeWaitNanos += System.nanoTime() - start;
+				}
+			}
+			return dequeue();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes up to maxItems available items into the collection, in queue order,
+	 * taking the lock once for the whole batch
+	 * @return number of items transferred
+	 */
+	public int drainTo(Collection<? super E> collection, int maxItems) {
+		if (collection == null) {
+			throw new NullPointerException();
+		}
+		lock.lock();
+		try {
+			int n = Math.min(maxItems, count);
+			for (int i = 0; i < n; i++) {
+				collection.add(dequeueWithoutSignal());
+			}
+			if (n > 0) {
+				notFull.signalAll();	// up to n producers can proceed
+			}
+			return n;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all available items into the collection
+	 * @return number of items transferred
+	 */
+	public int drainTo(Collection<? super E> collection) {
+		return drainTo(collection, Integer.MAX_VALUE);
+	}
+
+	private void enqueue(E item) {
+		queue.enqueue(item);
+		count++;
+		puts++;
+		occupancySum += count;
+		if (count > highWaterMark) {
+			highWaterMark = count;
+		}
+		notEmpty.signal();
+	}
+
+	private E dequeue() {
+		E item = dequeueWithoutSignal();
+		notFull.signal();
+		return item;
+	}
+
+	@SuppressWarnings("unchecked")
+	private E dequeueWithoutSignal() {
+		E item = (E) queue.dequeue();
+		count--;
+		takes++;
+		occupancySum += count;
+		return item;
+	}
+
+	private static void checkNotNull(Object item) {
+		if (item == null) {
+			throw new NullPointerException("null items are not allowed");	// null means empty
+		}
+	}
+
+	/**
+	 * @return current number of items
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of items that can be added before producers block
+	 */
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/**
+	 * Enables instrumentation of the underlying MyQueue, or disables it with null
+	 */
+	public void setMetrics(Metrics metrics) {
+		lock.lock();
+		try {
+			queue.setMetrics(metrics);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return immutable snapshot of the wait and occupancy statistics
+	 */
+	public Stats getStats() {
+		lock.lock();
+		try {
+			return new Stats(this);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the queue statistics
+	 */
+	public static class Stats {
+		public final int capacity;
+		public final int size;
+		public final int highWaterMark;
+		public final long puts, takes;
+		public final long putWaits, takeWaits;
+		public final long putWaitNanos, takeWaitNanos;
+		private final long occupancySum;
+
+		private Stats(MyBlockingQueue<?> queue) {
+			capacity = queue.capacity;
+			size = queue.count;
+			highWaterMark = queue.highWaterMark;
+			puts = queue.puts;
+			takes = queue.takes;
+			putWaits = queue.putWaits;
+			takeWaits = queue.takeWaits;
+			putWaitNanos = queue.putWaitNanos;
+			takeWaitNanos = queue.takeWaitNanos;
+			occupancySum = queue.occupancySum;
+		}
+
+		/**
+		 * @return average number of items held, sampled at every put and take
+		 */
+		public double averageOccupancy() {
+			long samples = puts + takes;
+			return (samples == 0)? 0: occupancySum / (double) samples;
+		}
+
+		/**
+		 * @return average time a producer waited for space, over all puts
+		 */
+		public double averagePutWaitNanos() {
+			return (puts == 0)? 0: putWaitNanos / (double) puts;
+		}
+
+		/**
+		 * @return average time a consumer waited for an item, over all takes
+		 */
+		public double averageTakeWaitNanos() {
+			return (takes == 0)? 0: takeWaitNanos / (double) takes;
+		}
+
+		public String toString() {
+			return String.format("capacity=%d, size=%d, highWaterMark=%d, avgOccupancy=%.1f, "
+					+ "puts=%d (%d waited, avg %.0f ns), takes=%d (%d waited, avg %.0f ns)",
+					capacity, size, highWaterMark, averageOccupancy(), puts, putWaits,
+					averagePutWaitNanos(), takes, takeWaits, averageTakeWaitNanos());
+		}
+	}
+
+	/**
+	 * Main method to test the data structure with a fast producer and slow consumers
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final MyBlockingQueue<Integer> queue = new MyBlockingQueue<Integer>(64);
+		final int items = 200000;
+		final int consumers = 4;
+		final AtomicBoolean producerDone = new AtomicBoolean(false);
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < items; i++) {
+					queue.put(i);
+				}
+				producerDone.set(true);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		final long[] sums = new long[consumers];
+		Thread[] workers = new Thread[consumers];
+		for (int c = 0; c < consumers; c++) {
+			final int id = c;
+			workers[c] = new Thread(() -> {
+				ArrayList<Integer> batch = new ArrayList<Integer>();
+				try {
+					while (true) {
+						/* wait for one item, then grab whatever else is already there */
+						Integer item = queue.poll(10, TimeUnit.MILLISECONDS);
+						if (item == null) {
+							/* the last items may have arrived after the poll timed out */
+							if (producerDone.get() && queue.size() == 0) {
+								return;
+							}
+							continue;
+						}
+						sums[id] += item;
+						queue.drainTo(batch, 15);
+						for (int drained: batch) {
+							sums[id] += drained;
+						}
+						batch.clear();
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			workers[c].start();
+		}
+		producer.start();
+		producer.join();
+		for (Thread worker: workers) {
+			worker.join();
+		}
+		long total = 0;
+		for (long sum: sums) {
+			total += sum;
+		}
+		System.out.println("sum " + total + ", expected " + ((long) items * (items - 1) / 2));
+		System.out.println(queue.getStats());
+		System.out.println("timed poll on empty queue: " + queue.poll(10, TimeUnit.MILLISECONDS));
+	}
+}
@@ -10,6 +10,9 @@ public class MyHashMap<K, V> {
 	private int capacity;
 	private int size;
 	private static final float LOAD_FACTOR = 0.75f; // size/capacity
+	private static final int BATCH = 16;			// keys interleaved at a time by getAll
+	private Metrics metrics;	// null unless instrumentation is enabled
+	private BloomFilter filter;	// null unless containsKey is filtered
 	
 	/**
 	 * Constructors
@@ -22,16 +25,40 @@ public class MyHashMap<K, V> {
 		table = new Entry[capacity];
 		size = 0;
 	}
+	/**
+	 * Restores a hashmap directly from a previously built table, without rehashing.
+	 * Every entry must already sit in the bucket given by its key's hashcode.
+	 * @param table	Bucket array to adopt
+	 * @param size	Number of entries chained in the table
+	 */
+	MyHashMap(Entry<K,V>[] table, int size){
+		this.capacity = table.length;
+		this.table = table;
+		this.size = size;
+	}
 	
 	/**
 	 * Puts the given entry into hashmap
 	 * @param entry
 	 */
 	public void put(K key, V value){
+		if (putEntry(key, value)){
+			size++; 		// increment size
+			if (filter != null) filter.add(key);
+			checkRehash();	// checks current load factor and rehash if necessary
+		}
+	}
+	
+	/**
+	 * Inserts or updates the entry, without touching size or rehashing
+	 * @return	True if a new entry was added, false if an existing value was updated
+	 */
+	private boolean putEntry(K key, V value){
 		int index = getTableIndex(key);	// index in table to be inserted at
 		
 		/* inserts entry into table */
 		Entry<K,V> head = table[index];	// gets the head of list at table[index]
+		int probes = 0;					// entries visited
 		if (head == null){
 			head = new Entry<K,V>(key, value, null);
 			table[index] = head;
@@ -39,15 +66,15 @@ public class MyHashMap<K, V> {
 		else{
 			Entry<K, V> prev = null;
 			Entry<K, V> curr = head;
-			boolean isInserted = false;
 			/* while not reached end of list */
 			while(curr != null){
+				probes++;
 				K currKey = curr.key;
 				/* if entry is found, update value */
-				if (currKey == key){
+				if (currKey.equals(key)){
 					curr.value = value;
-					isInserted = true;
-					break;
+					if (metrics != null) metrics.recordProbes(probes);
+					return false;
 				}
 				/* else progress down the list */
 				else{
@@ -55,13 +82,37 @@ public class MyHashMap<K, V> {
 					curr = curr.next;
 				}
 			}
-			/* if entry not already inserted, append it to back of list */
-			if (!isInserted){
-				prev.next = new Entry<K, V>(key, value, null);
+			/* entry not already present, append it to back of list */
+			prev.next = new Entry<K, V>(key, value, null);
+		}
+		if (metrics != null) metrics.recordProbes(probes);
+		return true;
+	}
+	
+	/**
+	 * Puts all the given entries, pre-sizing the table once for the whole batch
+	 * instead of doubling it repeatedly while inserting
+	 * @param keys		Keys to be inserted
+	 * @param values	Values, values[i] being associated with keys[i]
+	 */
+	public void putAll(K[] keys, V[] values){
+		if (keys.length != values.length){
+			throw new IllegalArgumentException("keys and values differ in length");
+		}
+		/* grow to fit every key being new, duplicates only leave some headroom */
+		int newCapacity = capacity;
+		while ((size + keys.length)/(float) newCapacity > LOAD_FACTOR){
+			newCapacity *= 2;
+		}
+		if (newCapacity != capacity){
+			resize(newCapacity);
+		}
+		for (int i = 0; i < keys.length; i++){
+			if (putEntry(keys[i], values[i])){
+				size++;
+				if (filter != null) filter.add(keys[i]);
 			}
 		}
-		size++; 		// increment size
-		checkRehash();	// checks current load factor and rehash if necessary
 	}
 	
 	/**
@@ -72,14 +123,14 @@ public class MyHashMap<K, V> {
 	public V get(K key){
 		int index = getTableIndex(key);
 		Entry<K, V> curr = table[index];
-		/* if list is empty, key does not exist */
-		if (curr == null)
-			return null;
+		int probes = 0;	// entries visited
 		
 		/* while not reached end of list */
 		while (curr != null){
+			probes++;
 			/* if key is found, return associating value */
-			if (curr.key == key){
+			if (curr.key.equals(key)){
+				if (metrics != null) metrics.recordProbes(probes);
 				return curr.value;
 			}
 			/* else, progress down the list */
@@ -87,9 +138,64 @@ public class MyHashMap<K, V> {
 				curr = curr.next;
 			}
 		}
+		if (metrics != null) metrics.recordProbes(probes);
 		return null;
 	}
 	
+	/**
+	 * Gets the values associated with a batch of keys
+	 * Keys are processed in groups of BATCH: all their table indices are computed first,
+	 * then all bucket heads are loaded, then the chains are walked one entry per key in
+	 * round robin. The loads within each stage are independent of each other, so their
+	 * cache misses overlap instead of being paid one after another as with get.
+	 * @param keys	Keys to be searched
+	 * @param out	Receives the values, out[i] being the value for keys[i] or null
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void getAll(K[] keys, V[] out){
+		if (keys.length != out.length){
+			throw new IllegalArgumentException("keys and out differ in length");
+		}
+		int[] indices = new int[BATCH];
+		Entry<K, V>[] cursors = new Entry[BATCH];	// next entry to examine per key
+		long probes = 0;
+		for (int base = 0; base < keys.length; base += BATCH){
+			int n = Math.min(BATCH, keys.length - base);
+			/* stage 1: hash every key */
+			for (int i = 0; i < n; i++){
+				indices[i] = getTableIndex(keys[base + i]);
+			}
+			/* stage 2: load every bucket head */
+			for (int i = 0; i < n; i++){
+				cursors[i] = table[indices[i]];
+				out[base + i] = null;
+			}
+			/* stage 3: advance every unresolved chain by one entry per round */
+			int pending = n;
+			while (pending > 0){
+				pending = 0;
+				for (int i = 0; i < n; i++){
+					Entry<K, V> curr = cursors[i];
+					if (curr == null){
+						continue;
+					}
+					probes++;
+					if (curr.key.equals(keys[base + i])){
+						out[base + i] = curr.value;
+						cursors[i] = null;
+					}
+					else{
+						cursors[i] = curr.next;
+						if (curr.next != null){
+							pending++;
+						}
+					}
+				}
+			}
+		}
+		if (metrics != null) metrics.recordBatch(keys.length, probes);
+	}
+	
 	/**
 	 * Removes entry for the given key if present
 	 * @param key	Key for intended entry
@@ -99,12 +205,14 @@ public class MyHashMap<K, V> {
 		V value = null;
 		int index = getTableIndex(key);
 		Entry<K, V> curr = table[index];
+		int probes = 1;	// entries visited
 		/* if entry does not exist */
 		if (curr == null){
+			if (metrics != null) metrics.recordProbes(0);
 			return null;
 		}
 		/* if entry is head item */
-		if (curr.key == key){
+		if (curr.key.equals(key)){
 			table[index] = curr.next;
 			value = curr.value;
 		}
@@ -114,17 +222,22 @@ public class MyHashMap<K, V> {
 			curr = curr.next;
 			/* while not end of list */
 			while (curr != null){
+				probes++;
 				/* remove entry if found */
-				if (curr.key == key){
+				if (curr.key.equals(key)){
 					value = curr.value;
 					prev.next = curr.next;	// remove incoming pointers
 					curr.next = null;		// remove outgoing pointers
 					break;
 				}
+				prev = curr;
 				curr = curr.next; // progress down list 
 			}
 		}
-		size--;	// decrement size
+		if (value != null){
+			size--;	// decrement size only if an entry was removed
+		}
+		if (metrics != null) metrics.recordProbes(probes);
 		return value;
 	}
 	
@@ -176,14 +289,37 @@ public class MyHashMap<K, V> {
 	 * Rehashes the current hashmap by doubling capacity
 	 */
 	public void rehash(){
-		Entry<K, V>[] list = asList();	// save current entries as list
-		capacity *= 2;					// double the capacity
-		size = 0;						// resets size
-		table = new Entry[capacity];	// clears and re-initializes table
+		resize(capacity * 2);
+	}
+	
+	/**
+	 * Moves every entry into a table of the given capacity
+	 * Existing entries are relinked rather than copied and re-inserted
+	 * @param newCapacity	Capacity of the new table
+	 */
+	private void resize(int newCapacity){
+		long start = (metrics != null)? System.nanoTime(): 0;
+		int oldCapacity = capacity;
+		Entry<K, V>[] oldTable = table;
+		capacity = newCapacity;
+		table = new Entry[capacity];
+		
+		/* pushes each entry onto the front of its new bucket */
+		for (Entry<K, V> entry: oldTable){
+			while (entry != null){
+				Entry<K, V> next = entry.next;
+				int index = getTableIndex(entry.key);
+				entry.next = table[index];
+				table[index] = entry;
+				entry = next;
+			}
+		}
 		
-		/* puts each entry back into table */
-		for (Entry<K, V> entry: list) {
-			put(entry.key, entry.value);
+		if (filter != null){
+			rebuildFilter(filter.falsePositiveRate());	// resized along, dropping removed keys
+		}
+		if (metrics != null){
+			metrics.recordRehash(System.nanoTime() - start, oldCapacity, capacity);
 		}
 	}
 	
@@ -200,10 +336,93 @@ public class MyHashMap<K, V> {
 	 * @return		True if key exists, false otherwise
 	 */
 	public boolean containsKey(K key){
+		/* a filter rejects most absent keys without walking a chain */
+		if (filter != null && !filter.mightContain(key)){
+			return false;
+		}
 		V value = get(key);
+		if (value == null && filter != null){
+			filter.recordFalsePositive();
+		}
 		return (value != null);
 	}
 	
+	/**
+	 * Puts a Bloom filter in front of containsKey, sized for the table's capacity
+	 * The filter is rebuilt on every rehash, which also clears bits left by removals
+	 * @param falsePositiveRate	Target rate of absent keys passing the filter
+	 */
+	public void enableFilter(double falsePositiveRate){
+		rebuildFilter(falsePositiveRate);
+	}
+	
+	/**
+	 * Removes the filter in front of containsKey
+	 */
+	public void disableFilter(){
+		filter = null;
+	}
+	
+	/**
+	 * @return	The filter in front of containsKey, for its counters, or null if disabled
+	 */
+	public BloomFilter getFilter(){
+		return filter;
+	}
+	
+	/**
+	 * Replaces the filter by one sized for the current capacity holding every key
+	 * O(capacity)
+	 */
+	private void rebuildFilter(double falsePositiveRate){
+		BloomFilter rebuilt = new BloomFilter(Math.max((int) (capacity*LOAD_FACTOR), size),
+				falsePositiveRate);
+		for (Entry<K, V> entry: table){
+			for (; entry != null; entry = entry.next){
+				rebuilt.add(entry.key);
+			}
+		}
+		if (filter != null){
+			rebuilt.copyCounters(filter);
+		}
+		filter = rebuilt;
+	}
+	
+	/**
+	 * Enables instrumentation by attaching the given metrics, or disables it with null
+	 * @param metrics	Metrics to record into
+	 */
+	public void setMetrics(Metrics metrics){
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Reports the recorded metrics along with the current chain length histogram
+	 * O(capacity) as every bucket is walked
+	 * @return	Report of the metrics, or null if instrumentation is disabled
+	 */
+	public Metrics.Report getMetricsReport(){
+		if (metrics == null){
+			return null;
+		}
+		long[] histogram = new long[Metrics.HISTOGRAM_BUCKETS];
+		for (Entry<K, V> entry: table){
+			int length = 0;
+			for (; entry != null; entry = entry.next){
+				length++;
+			}
+			histogram[Math.min(length, histogram.length - 1)]++;
+		}
+		return metrics.report(-1, size, histogram);
+	}
+	
+	/**
+	 * @return The underlying bucket array, used by Snapshot to persist the table layout
+	 */
+	Entry<K, V>[] getTable(){
+		return table;
+	}
+	
 	/**
 	 * Gets the index in table from given key
 	 * @param key	Key of interest
@@ -276,5 +495,39 @@ public class MyHashMap<K, V> {
 
         System.out.print("Current hashmap : ");
         System.out.print(map);	// test toString method
+        System.out.println();
+        
+        /* test batch operations against one-at-a-time operations */
+        int n = 4000000;
+        Integer[] keys = new Integer[n];
+        Integer[] values = new Integer[n];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < n; i++){
+        	keys[i] = random.nextInt();
+        	values[i] = i;
+        }
+        MyHashMap<Integer, Integer> large = new MyHashMap<Integer, Integer>();
+        long start = System.nanoTime();
+        large.putAll(keys, values);	// single pre-sizing instead of repeated doubling
+        System.out.println("putAll of " + n + ": " + (System.nanoTime() - start)/1000000 + "ms");
+        
+        Integer[] lookups = new Integer[n];
+        for (int i = 0; i < n; i++){
+        	lookups[i] = (i % 2 == 0)? keys[random.nextInt(n)]: Integer.valueOf(random.nextInt());
+        }
+        Integer[] single = new Integer[n];
+        Integer[] batched = new Integer[n];
+        for (int round = 0; round < 3; round++){	// later rounds are warmed up
+        	start = System.nanoTime();
+        	for (int i = 0; i < n; i++){
+        		single[i] = large.get(lookups[i]);
+        	}
+        	long singleNanos = System.nanoTime() - start;
+        	start = System.nanoTime();
+        	large.getAll(lookups, batched);
+        	long batchedNanos = System.nanoTime() - start;
+        	System.out.printf("get: %.1f ns/key, getAll: %.1f ns/key, same results: %b%n",
+        			singleNanos/(double) n, batchedNanos/(double) n, Arrays.equals(single, batched));
+        }
 	}
 }
\ No newline at end of file
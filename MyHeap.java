@@ -5,11 +5,20 @@ import java.util.ArrayList;
  */
 class MyHeap <T extends Comparable<T>> {
 	private ArrayList<T> heap;
+	private Metrics metrics;	// null unless instrumentation is enabled
 	
 	public MyHeap() {
 		heap = new ArrayList<T> (); 
 	}
 
+	/**
+	 * Adopts a list that is already in heap order, e.g. one restored by Snapshot
+	 * @param heap	items laid out exactly as a previous heap held them
+	 */
+	MyHeap(ArrayList<T> heap) {
+		this.heap = heap;
+	}
+
 	/**
 	 * Swaps the two items in heap at indices x and y
 	 * @param x
@@ -27,7 +36,7 @@ class MyHeap <T extends Comparable<T>> {
 	 * @param i		index of item
 	 * @return		item at index
 	 */
-	private T get(int i) {
+	T get(int i) {
 		return heap.get(i);
 	}
 	
@@ -90,11 +99,14 @@ class MyHeap <T extends Comparable<T>> {
 	 * @param i		index of item to be bubbled up
 	 */
 	private void heapifyUp(int i) {
+		int depth = 0;	// levels travelled
 		 /* while index != root and item is larger than parent */
 		while (i>0 && getParent(i).compareTo(get(i))<0) {
 			swap(getParentIndex(i), i);
 			i = getParentIndex(i);
+			depth++;
 		}
+		if (metrics != null) metrics.recordSift(depth);
 	}
 
 	/**
@@ -103,6 +115,7 @@ class MyHeap <T extends Comparable<T>> {
 	 * @param i		index of item to be bubbled down
 	 */
 	private void heapifyDown(int i) {
+		int depth = 0;	// levels travelled
 		/* while index is still within heap */
 		while (i < size()) {
 			T max = get(i); // max(item at i, left child, right child)
@@ -124,12 +137,14 @@ class MyHeap <T extends Comparable<T>> {
 			if (max_i != i) {
 				swap(i, max_i);	// swap 
 				i = max_i;      // update i
+				depth++;
 			}
 		    /* else if element has reached to its stable spot */
 			else {
 				break;
 			}
 		}
+		if (metrics != null) metrics.recordSift(depth);
 	}
 	
 	/**
@@ -154,6 +169,21 @@ class MyHeap <T extends Comparable<T>> {
 		return heap.size();
 	}
 
+	/**
+	 * Enables instrumentation by attaching the given metrics, or disables it with null
+	 * @param metrics	metrics to record into
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return	report of the recorded metrics, or null if instrumentation is disabled
+	 */
+	public Metrics.Report getMetricsReport() {
+		return (metrics == null)? null: metrics.report(-1, size(), null);
+	}
+
 	/**
 	 * Inserts item to the heap
 	 * worst case O(log N) when item needs to be bubbled to the root
@@ -162,6 +192,7 @@ class MyHeap <T extends Comparable<T>> {
 	public void offer(T item) {
 		heap.add(item); 		// add to rear of heap
 		heapifyUp(size() - 1); 	// O(log N)
+		if (metrics != null) metrics.recordSize(size());
 	}
 	
 	/**
@@ -1,11 +1,13 @@
 public class MyQueue {
 	Node first;
 	Node last;
+	Metrics metrics;	// null unless instrumentation is enabled
 	MyQueue(){
 		first = last = null;
 	}
 	
 	void enqueue(Object item){
+		if (metrics != null) metrics.recordAdd();
 		Node node = new Node(item);
 		if (first == null){
 			first = last = node;
@@ -19,6 +21,7 @@ public class MyQueue {
 	
 	Object dequeue(){
 		if (first != null){
+			if (metrics != null) metrics.recordRemove();
 			Node temp = first;
 			first = first.next;
 			if (first == null) last = null;
@@ -26,6 +29,24 @@ public class MyQueue {
 		}
 		return null;
 	}
+	
+	/**
+	 * Attaches metrics, seeded with the current size so that removals of items
+	 * queued beforehand do not drive it negative
+	 * O(N) as the items are counted
+	 */
+	void setMetrics(Metrics metrics){
+		this.metrics = metrics;
+		if (metrics != null){
+			int size = 0;
+			for (Node node = first; node != null; node = node.next) size++;
+			metrics.recordSize(size);
+		}
+	}
+	
+	Metrics.Report getMetricsReport(){
+		return (metrics == null)? null: metrics.report();
+	}
 	public static void main(String[] args) {
 		MyQueue q = new MyQueue();
 		q.enqueue(new String("haha"));
@@ -1,12 +1,14 @@
 
 public class MyStack {
 	Node top;
+	Metrics metrics;	// null unless instrumentation is enabled
 	
 	MyStack(){
 		top = null;
 	}
 	
 	void push(Object item){
+		if (metrics != null) metrics.recordAdd();
 		Node node = new Node(item);
 		Node temp = top;
 		top = node;
@@ -15,6 +17,7 @@ public class MyStack {
 	
 	Object pop(){
 		if (top != null){
+			if (metrics != null) metrics.recordRemove();
 			Node temp = top;
 			top = top.next;
 			return temp.data;
@@ -26,6 +29,24 @@ public class MyStack {
 		return top;
 	}
 	
+	/**
+	 * Attaches metrics, seeded with the current size so that pops of items
+	 * pushed beforehand do not drive it negative
+	 * O(N) as the items are counted
+	 */
+	void setMetrics(Metrics metrics){
+		this.metrics = metrics;
+		if (metrics != null){
+			int size = 0;
+			for (Node node = top; node != null; node = node.next) size++;
+			metrics.recordSize(size);
+		}
+	}
+	
+	Metrics.Report getMetricsReport(){
+		return (metrics == null)? null: metrics.report();
+	}
+	
 	public static void main(String[] args) {
 		MyStack stack = new MyStack();
 		stack.push(new String("haha"));
@@ -0,0 +1,451 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Arena of singly linked nodes stored as parallel arrays (struct of arrays)
+ * 	An alternative to the Node objects of MyLinkedList, MyQueue and MyStack for
+ * 	long-lived structures with very many nodes:
+ * 		node i is values[i] plus next[i], an int index instead of a reference
+ * 		so the whole arena is two objects for the GC to trace, however many nodes
+ * 	Freed nodes are recycled through a free list threaded through next[],
+ * 	and the arrays double when no free node is left
+ * 	Queues, stacks and lists are views allocating from a pool, several of which
+ * 	can share one pool; nodes of a view discarded without clear() stay allocated
+ * 	allocation and freeing are done in O[1], amortised over growth
+ * 	Not thread-safe, including between views of the same pool
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class NodePool {
+	static final int NIL = -1;		// null index
+	private int[] next;
+	private Object[] values;
+	private int freeHead = NIL;		// first recycled node
+	private int used;				// nodes ever handed out, the rest of the arrays is untouched
+	private int live;				// nodes currently allocated
+
+	/**
+	 * Constructors
+	 */
+	public NodePool() {
+		this(16);
+	}
+	public NodePool(int initialCapacity) {
+		next = new int[Math.max(initialCapacity, 1)];
+		values = new Object[next.length];
+	}
+
+	/**
+	 * Takes a node, recycled if possible
+	 * @return index of the node
+	 */
+	int allocate(Object value, int nextIndex) {
+		int index;
+		if (freeHead != NIL) {
+			index = freeHead;
+			freeHead = next[index];
+		}
+		else {
+			if (used == next.length) {
+				grow();
+			}
+			index = used++;
+		}
+		values[index] = value;
+		next[index] = nextIndex;
+		live++;
+		return index;
+	}
+
+	/**
+	 * Returns a node to the free list
+	 * @return the value it held
+	 */
+	Object free(int index) {
+		Object value = values[index];
+		values[index] = null;	// let the value be collected
+		next[index] = freeHead;
+		freeHead = index;
+		live--;
+		return value;
+	}
+
+	/**
+	 * Frees every node of a chain ending in NIL
+	 */
+	void freeChain(int index) {
+		while (index != NIL) {
+			int following = next[index];
+			free(index);
+			index = following;
+		}
+	}
+
+	private void grow() {
+		int capacity = (int) Math.min(next.length * 2L, Integer.MAX_VALUE - 8);
+		if (capacity == next.length) {
+			throw new IllegalStateException("node pool is full");
+		}
+		next = Arrays.copyOf(next, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	/**
+	 * @return number of nodes currently allocated
+	 */
+	public int live() {
+		return live;
+	}
+
+	/**
+	 * @return number of nodes the arrays can hold without growing
+	 */
+	public int capacity() {
+		return next.length;
+	}
+
+	public Queue newQueue() {
+		return new Queue(this);
+	}
+
+	public Stack newStack() {
+		return new Stack(this);
+	}
+
+	public LinkedList newLinkedList() {
+		return new LinkedList(this);
+	}
+
+	/**
+	 * FIFO queue with the operations of MyQueue
+	 */
+	public static class Queue {
+		private final NodePool pool;
+		private int first = NIL, last = NIL;
+		private int size;
+		Metrics metrics;	// null unless instrumentation is enabled
+
+		Queue(NodePool pool) {
+			this.pool = pool;
+		}
+
+		void enqueue(Object item) {
+			if (metrics != null) metrics.recordAdd();
+			int node = pool.allocate(item, NIL);
+			if (first == NIL) {
+				first = last = node;
+			}
+			else {
+				pool.next[last] = node;
+				last = node;
+			}
+			size++;
+		}
+
+		Object dequeue() {
+			if (first != NIL) {
+				if (metrics != null) metrics.recordRemove();
+				int node = first;
+				first = pool.next[node];
+				if (first == NIL) last = NIL;
+				size--;
+				return pool.free(node);
+			}
+			return null;
+		}
+
+		Object peek() {
+			return (first == NIL)? null: pool.values[first];
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean isEmpty() {
+			return (first == NIL);
+		}
+
+		/**
+		 * Removes every item, returning the nodes to the pool
+		 */
+		void clear() {
+			pool.freeChain(first);
+			first = last = NIL;
+			size = 0;
+			if (metrics != null) metrics.recordSize(0);
+		}
+
+		void setMetrics(Metrics metrics) {
+			this.metrics = metrics;
+			if (metrics != null) metrics.recordSize(size);	// items added before attaching
+		}
+
+		Metrics.Report getMetricsReport() {
+			return (metrics == null)? null: metrics.report();
+		}
+	}
+
+	/**
+	 * LIFO stack with the operations of MyStack
+	 */
+	public static class Stack {
+		private final NodePool pool;
+		private int top = NIL;
+		private int size;
+		Metrics metrics;	// null unless instrumentation is enabled
+
+		Stack(NodePool pool) {
+			this.pool = pool;
+		}
+
+		void push(Object item) {
+			if (metrics != null) metrics.recordAdd();
+			top = pool.allocate(item, top);
+			size++;
+		}
+
+		Object pop() {
+			if (top != NIL) {
+				if (metrics != null) metrics.recordRemove();
+				int node = top;
+				top = pool.next[node];
+				size--;
+				return pool.free(node);
+			}
+			return null;
+		}
+
+		Object peek() {
+			return (top == NIL)? null: pool.values[top];
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean isEmpty() {
+			return (top == NIL);
+		}
+
+		/**
+		 * Removes every item, returning the nodes to the pool
+		 */
+		void clear() {
+			pool.freeChain(top);
+			top = NIL;
+			size = 0;
+			if (metrics != null) metrics.recordSize(0);
+		}
+
+		void setMetrics(Metrics metrics) {
+			this.metrics = metrics;
+			if (metrics != null) metrics.recordSize(size);	// items added before attaching
+		}
+
+		Metrics.Report getMetricsReport() {
+			return (metrics == null)? null: metrics.report();
+		}
+	}
+
+	/**
+	 * Singly linked list with the operations of MyLinkedList, on values instead of nodes
+	 */
+	public static class LinkedList implements Iterable<Object> {
+		private final NodePool pool;
+		private int head = NIL, tail = NIL;
+		private int size;
+
+		LinkedList(NodePool pool) {
+			this.pool = pool;
+		}
+
+		public void add(Object value) {
+			int node = pool.allocate(value, NIL);
+			if (head == NIL) head = node;
+			else pool.next[tail] = node;
+			tail = node;
+			size++;
+		}
+
+		public void addFirst(Object value) {
+			head = pool.allocate(value, head);
+			if (tail == NIL) tail = head;
+			size++;
+		}
+
+		public Object removeFirst() {
+			if (head == NIL) {
+				throw new NoSuchElementException();
+			}
+			int node = head;
+			head = pool.next[node];
+			if (head == NIL) tail = NIL;
+			size--;
+			return pool.free(node);
+		}
+
+		// reverses the list in O(N) time with O(1) space
+		public void reverseList() {
+			tail = head;
+			head = reverse(head);
+		}
+
+		/**
+		 * Reverses the chain starting at node
+		 * @return the new first node
+		 */
+		private int reverse(int node) {
+			int[] next = pool.next;
+			int prev = NIL;
+			while (node != NIL) {
+				int following = next[node];
+				next[node] = prev;
+				prev = node;
+				node = following;
+			}
+			return prev;
+		}
+
+		// checks to see if linked list is palindrome, in O(N) time with O(1) space:
+		// reverses the second half in place, compares, then restores it
+		public boolean isPalindrome() {
+			if (size < 2) {
+				return true;
+			}
+			int[] next = pool.next;
+			int middle = head;
+			for (int i = 0; i < (size - 1) / 2; i++) {
+				middle = next[middle];	// last node of the first half
+			}
+			int secondHalf = reverse(next[middle]);
+			boolean palindrome = true;
+			for (int a = head, b = secondHalf; b != NIL; a = next[a], b = next[b]) {
+				if (!pool.values[a].equals(pool.values[b])) {
+					palindrome = false;
+					break;
+				}
+			}
+			next[middle] = reverse(secondHalf);
+			return palindrome;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Removes every value, returning the nodes to the pool
+		 */
+		public void clear() {
+			pool.freeChain(head);
+			head = tail = NIL;
+			size = 0;
+		}
+
+		// O(N)
+		public void printList() {
+			for (Object value: this) {
+				System.out.println(value);
+			}
+		}
+
+		// O(3N)
+		public void printReverse() {
+			reverseList();	// reverses list
+			printList();
+			reverseList();	// reverses list
+		}
+
+		public Iterator<Object> iterator() {
+			return new Iterator<Object>() {
+				private int node = head;
+
+				public boolean hasNext() {
+					return node != NIL;
+				}
+
+				public Object next() {
+					if (node == NIL) {
+						throw new NoSuchElementException();
+					}
+					Object value = pool.values[node];
+					node = pool.next[node];
+					return value;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Main method to test the pool and compare GC work against MyQueue
+	 * 	args[0]: number of queued items (default 20,000,000)
+	 */
+	public static void main(String[] args) {
+		NodePool pool = new NodePool();
+		LinkedList list = pool.newLinkedList();
+		for (String s: new String[] {"a", "b", "c", "b", "a"}) {
+			list.add(s);
+		}
+		System.out.println("palindrome: " + list.isPalindrome());
+		list.printReverse();
+		Stack stack = pool.newStack();
+		stack.push("haha");
+		stack.push(5);
+		System.out.println(stack.pop() + ", " + stack.pop() + ", " + stack.pop());
+		list.clear();
+		System.out.println("live nodes after clear: " + pool.live() + " of " + pool.capacity());
+
+		/* values are small Integers, which are cached, so only the nodes differ */
+		int n = (args.length > 0)? Integer.parseInt(args[0]): 20000000;
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			long used = usedMemory();
+			long start = System.nanoTime();
+			MyQueue queue = new MyQueue();
+			for (int i = 0; i < n; i++) {
+				queue.enqueue(i & 127);
+			}
+			long built = System.nanoTime();
+			long gc = timeFullGc();
+			long bytes = usedMemory() - used;
+			System.out.printf("MyQueue:         enqueue %.1f ns, full GC %d ms, %.1f bytes/item%n",
+					(built - start) / (double) n, gc / 1000000, bytes / (double) n);
+			queue.dequeue();	// keeps the queue reachable through the measurements
+			queue = null;		// and only through them
+
+			used = usedMemory();
+			start = System.nanoTime();
+			Queue pooled = new NodePool().newQueue();
+			for (int i = 0; i < n; i++) {
+				pooled.enqueue(i & 127);
+			}
+			built = System.nanoTime();
+			gc = timeFullGc();
+			bytes = usedMemory() - used;
+			System.out.printf("NodePool.Queue:  enqueue %.1f ns, full GC %d ms, %.1f bytes/item%n",
+					(built - start) / (double) n, gc / 1000000, bytes / (double) n);
+			long sum = 0;
+			while (!pooled.isEmpty()) {
+				sum += (Integer) pooled.dequeue();
+			}
+			System.out.println("dequeued sum " + sum);
+		}
+	}
+
+	private static long timeFullGc() {
+		long start = System.nanoTime();
+		System.gc();
+		return System.nanoTime() - start;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
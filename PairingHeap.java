@@ -0,0 +1,337 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Implementation of a pairing heap, a max heap like MyHeap with an increase-key
+ * 	A heap-ordered multiway tree: each node links to its first child and next sibling
+ * 	insertion is done in O[1], by linking the new node with the root
+ * 	increaseKey is done in O[1] amortised (conjectured, o(log N) proven): the node
+ * 	is cut from its parent and linked with the root
+ * 	poll is done in O[log (N)] amortised, by merging the children of the root
+ * 	pairwise left to right, then the pairs right to left
+ * 	offer returns a handle for increaseKey, the counterpart of decrease-key for
+ * 	shortest paths, whose Comparable wrappers order by reversed distance as with MyHeap
+ */
+
+/**
+ * @author Jin Zhe
+ * @param <T>	generic type for the type of objects to be inserted
+ */
+class PairingHeap <T extends Comparable<T>> {
+	private Node<T> root;
+	private int size;
+
+	public PairingHeap() {
+		root = null;
+	}
+
+	/**
+	 * Inserts item to the heap
+	 * O(1)
+	 * @param item	item to be inserted
+	 * @return		handle of the item, for increaseKey
+	 */
+	public Node<T> offer(T item) {
+		Node<T> node = new Node<T>(item);
+		root = (root == null)? node: link(root, node);
+		size++;
+		return node;
+	}
+
+	/**
+	 * Retrieves and removes the head of this queue
+	 * @return	head of queue or null if queue is empty
+	 */
+	public T poll() {
+		if (root == null) {
+			return null;
+		}
+		Node<T> top = root;
+		root = combine(top.child);
+		top.child = null;
+		size--;
+		return top.item;
+	}
+
+	/**
+	 * Retrieves, but does not remove, the head of queue
+	 * @return	head of queue or null if queue is empty
+	 */
+	public T peek() {
+		return (root == null)? null: root.item;
+	}
+
+	/**
+	 * Replaces the item of a node still in the heap by one at least as large,
+	 * which may be the same object after raising its priority in place
+	 * O(1) amortised
+	 * @param node	handle returned by offer
+	 * @param item	new item, not smaller than the current one
+	 */
+	public void increaseKey(Node<T> node, T item) {
+		if (item.compareTo(node.item) < 0) {
+			throw new IllegalArgumentException("new item is smaller than the current one");
+		}
+		node.item = item;
+		if (node == root) {
+			return;
+		}
+		/* cut the subtree of node from its parent, then link it with the root */
+		if (node.prev.child == node) {
+			node.prev.child = node.sibling;
+		}
+		else {
+			node.prev.sibling = node.sibling;
+		}
+		if (node.sibling != null) {
+			node.sibling.prev = node.prev;
+		}
+		node.prev = node.sibling = null;
+		root = link(root, node);
+	}
+
+	/**
+	 * Links two roots, the smaller becoming the first child of the larger
+	 * @return the larger, root of the linked tree
+	 */
+	private Node<T> link(Node<T> a, Node<T> b) {
+		Node<T> parent = a, child = b;
+		if (a.item.compareTo(b.item) < 0) {
+			parent = b;
+			child = a;
+		}
+		child.prev = parent;
+		child.sibling = parent.child;
+		if (parent.child != null) {
+			parent.child.prev = child;
+		}
+		parent.child = child;
+		return parent;
+	}
+
+	/**
+	 * Merges a list of siblings into one tree, in two passes without recursion
+	 * @return root of the merged tree, or null for an empty list
+	 */
+	private Node<T> combine(Node<T> first) {
+		if (first == null) {
+			return null;
+		}
+		/* first pass: link pairs left to right, chaining the results in reverse */
+		Node<T> pairs = null;
+		while (first != null) {
+			Node<T> a = first;
+			Node<T> b = a.sibling;
+			first = (b == null)? null: b.sibling;
+			a.prev = a.sibling = null;
+			Node<T> linked = a;
+			if (b != null) {
+				b.prev = b.sibling = null;
+				linked = link(a, b);
+			}
+			linked.sibling = pairs;
+			pairs = linked;
+		}
+		/* second pass: link the pairs right to left into one tree */
+		Node<T> result = pairs;
+		Node<T> rest = pairs.sibling;
+		result.sibling = null;
+		while (rest != null) {
+			Node<T> next = rest.sibling;
+			rest.sibling = null;
+			result = link(result, rest);
+			rest = next;
+		}
+		return result;
+	}
+
+	/**
+	 * Getter for current heap size
+	 * @return	the size of heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * Node class, also the handle of its item
+	 */
+	public static class Node<T> {
+		private T item;
+		private Node<T> child, sibling;
+		private Node<T> prev;	// parent if first child, else previous sibling
+
+		private Node(T item) {
+			this.item = item;
+		}
+
+		public T get() {
+			return item;
+		}
+	}
+
+	/**
+	 * Vertex and tentative distance, ordered by reversed distance as the heaps are max heaps
+	 */
+	private static class Entry implements Comparable<Entry> {
+		final int vertex;
+		long distance;
+
+		Entry(int vertex, long distance) {
+			this.vertex = vertex;
+			this.distance = distance;
+		}
+
+		public int compareTo(Entry other) {
+			return Long.compare(other.distance, distance);
+		}
+	}
+
+	/**
+	 * Dijkstra with MyHeap: no decrease-key, so improved vertices are offered again
+	 * and stale entries skipped when polled
+	 */
+	private static long[] dijkstraMyHeap(int[] offsets, int[] targets, int[] weights) {
+		int n = offsets.length - 1;
+		long[] distances = new long[n];
+		Arrays.fill(distances, Long.MAX_VALUE);
+		distances[0] = 0;
+		MyHeap<Entry> heap = new MyHeap<Entry>();
+		heap.offer(new Entry(0, 0));
+		while (heap.size() > 0) {
+			Entry entry = heap.poll();
+			int u = entry.vertex;
+			if (entry.distance > distances[u]) {
+				continue;	// stale
+			}
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				long distance = entry.distance + weights[e];
+				int v = targets[e];
+				if (distance < distances[v]) {
+					distances[v] = distance;
+					heap.offer(new Entry(v, distance));
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Dijkstra with PairingHeap: one node per vertex, improved through increaseKey
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static long[] dijkstraPairing(int[] offsets, int[] targets, int[] weights) {
+		int n = offsets.length - 1;
+		long[] distances = new long[n];
+		Arrays.fill(distances, Long.MAX_VALUE);
+		distances[0] = 0;
+		Node<Entry>[] handles = new Node[n];
+		boolean[] settled = new boolean[n];
+		PairingHeap<Entry> heap = new PairingHeap<Entry>();
+		handles[0] = heap.offer(new Entry(0, 0));
+		while (!heap.isEmpty()) {
+			Entry entry = heap.poll();
+			int u = entry.vertex;
+			settled[u] = true;
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				long distance = entry.distance + weights[e];
+				int v = targets[e];
+				if (!settled[v] && distance < distances[v]) {
+					distances[v] = distance;
+					if (handles[v] == null) {
+						handles[v] = heap.offer(new Entry(v, distance));
+					}
+					else {
+						Entry improved = handles[v].get();
+						improved.distance = distance;
+						heap.increaseKey(handles[v], improved);
+					}
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Dijkstra with RadixHeap: distances polled are monotone, stale entries skipped
+	 */
+	private static long[] dijkstraRadix(int[] offsets, int[] targets, int[] weights) {
+		int n = offsets.length - 1;
+		long[] distances = new long[n];
+		Arrays.fill(distances, Long.MAX_VALUE);
+		distances[0] = 0;
+		RadixHeap<Integer> heap = new RadixHeap<Integer>();
+		heap.offer(0, 0);
+		while (!heap.isEmpty()) {
+			long distance = heap.peekKey();
+			int u = heap.poll();
+			if (distance > distances[u]) {
+				continue;	// stale
+			}
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				long candidate = distance + weights[e];
+				int v = targets[e];
+				if (candidate < distances[v]) {
+					distances[v] = candidate;
+					heap.offer(candidate, v);
+				}
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Main method: simple tests, then Dijkstra on a random graph with each heap
+	 * 	args[0]: number of vertices (default 1,000,000)
+	 * 	args[1]: edges per vertex (default 8)
+	 */
+	public static void main(String[] args) {
+		PairingHeap<Integer> heap = new PairingHeap<Integer>();
+		heap.offer(1);
+		heap.offer(2);
+		Node<Integer> nine = heap.offer(9);
+		Node<Integer> four = heap.offer(4);
+		heap.offer(5);
+		System.out.println("Peek: " + heap.peek());
+		System.out.println("Poll: " + heap.poll());
+		heap.increaseKey(four, 7);
+		System.out.println("After increaseKey(4 -> 7), poll: " + heap.poll() + ", " + heap.poll()
+				+ ", " + heap.poll() + ", " + heap.poll() + ", " + heap.poll());
+		System.out.println("Polled handle still reads: " + nine.get());
+
+		int n = (args.length > 0)? Integer.parseInt(args[0]): 1000000;
+		int degree = (args.length > 1)? Integer.parseInt(args[1]): 8;
+		Random random = new Random(42);
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[n * degree];
+		int[] weights = new int[n * degree];
+		for (int u = 0; u < n; u++) {
+			offsets[u + 1] = offsets[u] + degree;
+			targets[offsets[u]] = (u + 1) % n;	// a ring keeps every vertex reachable
+			weights[offsets[u]] = 1 + random.nextInt(1000);
+			for (int e = offsets[u] + 1; e < offsets[u + 1]; e++) {
+				targets[e] = random.nextInt(n);
+				weights[e] = 1 + random.nextInt(1000);
+			}
+		}
+		System.out.println("Graph: " + n + " vertices, " + (long) n * degree + " edges");
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			long start = System.nanoTime();
+			long[] expected = dijkstraMyHeap(offsets, targets, weights);
+			long myHeap = System.nanoTime() - start;
+			start = System.nanoTime();
+			long[] pairing = dijkstraPairing(offsets, targets, weights);
+			long pairingNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			long[] radix = dijkstraRadix(offsets, targets, weights);
+			long radixNanos = System.nanoTime() - start;
+			System.out.printf("MyHeap %d ms, PairingHeap %d ms, RadixHeap %d ms, same distances: %b%n",
+					myHeap / 1000000, pairingNanos / 1000000, radixNanos / 1000000,
+					Arrays.equals(expected, pairing) && Arrays.equals(expected, radix));
+		}
+	}
+}
@@ -0,0 +1,700 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * Map partitioned over several MyHashMap servers, e.g. one process per node
+ * 	Keys are sharded by consistent hashing:
+ * 		every server owns virtualNodes positions on a ring of 64 bit hashes,
+ * 		a key belongs to the server owning the first position at or after its hash
+ * 	so adding or removing a server only moves the keys of the ranges it gains
+ * 	or loses, about 1/N of them, which are migrated when it joins or leaves
+ * 	Servers store keys and values as the bytes encoded by the client's codecs
+ * 	Protocol, over one TCP connection per server, opened in each direction by a
+ * 	Snapshot header and framed with Snapshot varints and length-prefixed values:
+ * 		request:	op, then its arguments
+ * 		response:	one per request, in request order
+ * 	Requests are batched per server and pipelined: a whole batch is written to
+ * 	every server involved before any response is read, ending with a SYNC
+ * 	which makes the server flush its responses
+ * 	A batch holds at most BATCH requests per server, and past its first request
+ * 	at most BATCH_BYTES of them, which the socket buffers hold: the client never
+ * 	waits to write to a server that itself waits for the client to read its
+ * 	responses, however large they are (PUT responses being a byte, a PUT batch
+ * 	may overrun BATCH_BYTES by its last value)
+ * 	A connection that fails part-way through a batch is closed, as the responses
+ * 	left unread would be taken for those of later requests
+ * 	The ring lives in this client, which is assumed to be the only one
+ * 	changing membership
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class PartitionedMap<K, V> implements Closeable {
+	/* request ops */
+	private static final int SYNC = 0;		// flush responses, none of its own
+	private static final int GET = 1;		// key -> 0 | 1, value
+	private static final int PUT = 2;		// key, value -> 1 if new, else 0
+	private static final int REMOVE = 3;	// key -> 0 | 1, value
+	private static final int SIZE = 4;		// -> size
+	private static final int EXTRACT = 5;	// ranges -> count, (key, value)*
+	private static final int DROP = 6;		// ranges -> count removed
+	private static final int BATCH = 1024;	// requests per server written before reading
+	private static final int BATCH_BYTES = 64 * 1024;	// request bytes per server written before reading
+
+	private final Snapshot.Codec<K> keyCodec;
+	private final Snapshot.Codec<V> valueCodec;
+	private final int virtualNodes;
+	private final TreeMap<Long, Node> ring = new TreeMap<Long, Node>();
+	private final Map<InetSocketAddress, Node> nodes = new LinkedHashMap<InetSocketAddress, Node>();
+	private ByteBuffer scratch = ByteBuffer.allocate(256);	// holds one encoded key
+
+	/**
+	 * Constructor
+	 * @param keyCodec		codec for the keys, equal keys must encode to equal bytes
+	 * @param valueCodec	codec for the values
+	 * @param virtualNodes	ring positions per server, more spread the keys more evenly
+	 */
+	public PartitionedMap(Snapshot.Codec<K> keyCodec, Snapshot.Codec<V> valueCodec, int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+		}
+		this.keyCodec = keyCodec;
+		this.valueCodec = valueCodec;
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * Puts the given entry
+	 * @return true if the key was new
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean put(K key, V value) throws IOException {
+		Object[] results = new Object[1];
+		execute(PUT, encode((K[]) new Object[] {key}), new Object[] {value}, valueCodec, results);
+		return (Boolean) results[0];
+	}
+
+	/**
+	 * Gets the value associated with the given key
+	 * @return associated value, or null if absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) throws IOException {
+		Object[] results = new Object[1];
+		execute(GET, encode((K[]) new Object[] {key}), null, null, results);
+		return (V) results[0];
+	}
+
+	/**
+	 * Removes the entry for the given key if present
+	 * @return value associated with key, or null if absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(K key) throws IOException {
+		Object[] results = new Object[1];
+		execute(REMOVE, encode((K[]) new Object[] {key}), null, null, results);
+		return (V) results[0];
+	}
+
+	/**
+	 * Puts all the given entries, batched per server and pipelined
+	 * @param keys		keys to be inserted
+	 * @param values	values, values[i] being associated with keys[i]
+	 */
+	public void putAll(K[] keys, V[] values) throws IOException {
+		if (keys.length != values.length) {
+			throw new IllegalArgumentException("keys and values differ in length");
+		}
+		execute(PUT, encode(keys), values, valueCodec, new Object[keys.length]);
+	}
+
+	/**
+	 * Gets the values of all the given keys, batched per server and pipelined
+	 * @param keys	keys to be searched
+	 * @param out	receives the values, out[i] being the value of keys[i] or null
+	 */
+	public void getAll(K[] keys, V[] out) throws IOException {
+		if (out.length < keys.length) {
+			throw new IllegalArgumentException("output shorter than keys");
+		}
+		execute(GET, encode(keys), null, null, out);
+	}
+
+	/**
+	 * @return total number of entries over all servers
+	 */
+	public long size() throws IOException {
+		for (Node node: nodes.values()) {
+			node.out.writeVarInt(SIZE);
+			node.out.writeVarInt(SYNC);
+			node.out.flush();
+		}
+		long size = 0;
+		for (Node node: nodes.values()) {
+			size += node.in.readVarInt();
+		}
+		return size;
+	}
+
+	/**
+	 * Sends requests for every key to its owner, a batch per server at a time:
+	 * all servers get their part of a batch before any response is read
+	 * @param keys		encoded keys
+	 * @param values	values to send with each key, or null for none
+	 * @param codec		codec of the values
+	 * @param results	receives the response of each request
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void execute(int op, byte[][] keys, Object[] values, Snapshot.Codec codec,
+			Object[] results) throws IOException {
+		if (ring.isEmpty()) {
+			throw new IllegalStateException("no servers");
+		}
+		List<Node> involved = new ArrayList<Node>();
+		try {
+			int next = 0;
+			while (next < keys.length) {
+				/* route requests until one server's batch is full */
+				involved.clear();
+				for (; next < keys.length; next++) {
+					Node node = owner(hash(keys[next]));
+					int bytes = Snapshot.varIntSize(op) + Snapshot.varIntSize(keys[next].length)
+							+ keys[next].length;
+					if (node.pendingCount == 0) {
+						involved.add(node);
+					}
+					else if (node.pendingCount == BATCH || node.pendingBytes + bytes > BATCH_BYTES) {
+						break;
+					}
+					node.pending[node.pendingCount++] = next;
+					node.pendingBytes += bytes;
+					node.out.writeVarInt(op);
+					node.out.write(keys[next], Snapshot.BYTES);
+					if (values != null) {
+						node.pendingBytes += node.out.write(values[next], codec);
+					}
+				}
+				for (Node node: involved) {
+					node.out.writeVarInt(SYNC);
+					node.out.flush();
+				}
+				/* then collect the responses, in request order per server */
+				for (Node node: involved) {
+					for (int i = 0; i < node.pendingCount; i++) {
+						int index = node.pending[i];
+						if (op == PUT) {
+							results[index] = (node.in.readVarInt() == 1);
+						}
+						else {
+							results[index] = (node.in.readVarInt() == 1)? node.in.read(valueCodec): null;
+						}
+					}
+					node.pendingCount = 0;
+					node.pendingBytes = 0;
+				}
+			}
+		}
+		finally {
+			/* after a failure, the connections with unread responses are out of step */
+			for (Node node: involved) {
+				if (node.pendingCount != 0) {
+					node.pendingCount = 0;
+					node.pendingBytes = 0;
+					node.abandon();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Connects to a server and adds it to the ring, moving over the keys of
+	 * the ranges it takes from the other servers
+	 */
+	public void addNode(InetSocketAddress address) throws IOException {
+		if (nodes.containsKey(address)) {
+			throw new IllegalArgumentException("already a member: " + address);
+		}
+		Node node = new Node(address);
+		nodes.put(address, node);
+		List<Long> positions = new ArrayList<Long>();
+		for (int i = 0; i < virtualNodes; i++) {
+			long position = hash((address + "#" + i).getBytes(StandardCharsets.UTF_8));
+			if (!ring.containsKey(position)) {	// a collision just costs a position
+				ring.put(position, node);
+				positions.add(position);
+			}
+		}
+		node.positions = positions;
+		/* the node now owns (predecessor, position], which belonged to the next other node */
+		Map<Node, List<long[]>> moving = new LinkedHashMap<Node, List<long[]>>();
+		for (long position: positions) {
+			Node previousOwner = nextOther(position, node);
+			if (previousOwner == null) {
+				break;		// first node, nothing to move
+			}
+			Long predecessor = ring.lowerKey(position);
+			long start = (predecessor != null)? predecessor: ring.lastKey();
+			List<long[]> ranges = moving.get(previousOwner);
+			if (ranges == null) {
+				ranges = new ArrayList<long[]>();
+				moving.put(previousOwner, ranges);
+			}
+			ranges.add(new long[] {start, position});
+		}
+		for (Map.Entry<Node, List<long[]>> entry: moving.entrySet()) {
+			migrate(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Removes a server from the ring after moving all its keys to the others
+	 */
+	public void removeNode(InetSocketAddress address) throws IOException {
+		Node node = nodes.get(address);
+		if (node == null) {
+			throw new IllegalArgumentException("not a member: " + address);
+		}
+		if (nodes.size() == 1) {
+			throw new IllegalStateException("cannot remove the last server");
+		}
+		for (long position: node.positions) {
+			ring.remove(position);
+		}
+		nodes.remove(address);
+		List<long[]> everything = new ArrayList<long[]>();
+		everything.add(new long[] {0, 0});	// (x, x] wraps around the whole ring
+		migrate(node, everything);
+		node.close();
+	}
+
+	/**
+	 * Copies the entries of source in the given ranges to their owners on the
+	 * current ring, then drops them from source
+	 */
+	private void migrate(Node source, List<long[]> ranges) throws IOException {
+		source.out.writeVarInt(EXTRACT);
+		writeRanges(source.out, ranges);
+		source.out.writeVarInt(SYNC);
+		source.out.flush();
+		int count = source.in.readVarInt();
+		byte[][] keys = new byte[count][];
+		Object[] values = new Object[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = source.in.read(Snapshot.BYTES);
+			values[i] = source.in.read(Snapshot.BYTES);
+		}
+		execute(PUT, keys, values, Snapshot.BYTES, new Object[count]);
+		source.out.writeVarInt(DROP);
+		writeRanges(source.out, ranges);
+		source.out.writeVarInt(SYNC);
+		source.out.flush();
+		source.in.readVarInt();
+	}
+
+	private static void writeRanges(Snapshot.Writer out, List<long[]> ranges) throws IOException {
+		out.writeVarInt(ranges.size());
+		for (long[] range: ranges) {
+			out.writeVarLong(range[0]);
+			out.writeVarLong(range[1]);
+		}
+	}
+
+	/**
+	 * @return owner of the first ring position at or after hash, wrapping around
+	 */
+	private Node owner(long hash) {
+		Map.Entry<Long, Node> entry = ring.ceilingEntry(hash);
+		return (entry != null)? entry.getValue(): ring.firstEntry().getValue();
+	}
+
+	/**
+	 * @return owner of the first position after the given one that is not node,
+	 * 		   or null if node is alone on the ring
+	 */
+	private Node nextOther(long position, Node node) {
+		Map.Entry<Long, Node> entry = ring.higherEntry(position);
+		for (int i = 0; i < ring.size(); i++) {
+			if (entry == null) {
+				entry = ring.firstEntry();
+			}
+			if (entry.getValue() != node) {
+				return entry.getValue();
+			}
+			entry = ring.higherEntry(entry.getKey());
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of keys held by each server
+	 */
+	public Map<InetSocketAddress, Integer> distribution() throws IOException {
+		Map<InetSocketAddress, Integer> distribution = new LinkedHashMap<InetSocketAddress, Integer>();
+		for (Node node: nodes.values()) {
+			node.out.writeVarInt(SIZE);
+			node.out.writeVarInt(SYNC);
+			node.out.flush();
+			distribution.put(node.address, node.in.readVarInt());
+		}
+		return distribution;
+	}
+
+	/**
+	 * Closes the connections, leaving the servers and their data as they are
+	 */
+	public void close() throws IOException {
+		for (Node node: nodes.values()) {
+			node.close();
+		}
+		nodes.clear();
+		ring.clear();
+	}
+
+	/**
+	 * Encodes the keys, whose bytes are both hashed and sent
+	 */
+	private byte[][] encode(K[] keys) {
+		byte[][] encoded = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			/* encode into scratch first, doubling it until the key fits */
+			while (true) {
+				scratch.clear();
+				try {
+					keyCodec.encode(keys[i], scratch);
+					break;
+				}
+				catch (BufferOverflowException e) {
+					scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+				}
+			}
+			encoded[i] = Arrays.copyOf(scratch.array(), scratch.position());
+		}
+		return encoded;
+	}
+
+	/**
+	 * Ring position of an encoded key (FNV-1a, then SplitMix64 finalizer)
+	 * Shared by client and servers, which must agree on it
+	 */
+	static long hash(byte[] bytes) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b: bytes) {
+			h ^= b & 0xFF;
+			h *= 0x100000001b3L;
+		}
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * @return true if hash lies in one of the ranges (start, end], wrapping around
+	 * 		   when start >= end
+	 */
+	private static boolean inRanges(long hash, long[][] ranges) {
+		for (long[] range: ranges) {
+			long start = range[0], end = range[1];
+			if ((start < end)? (hash > start && hash <= end): (hash > start || hash <= end)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Connection to one server
+	 */
+	private static class Node {
+		final InetSocketAddress address;
+		final SocketChannel channel;
+		final Snapshot.Writer out;
+		final Snapshot.Reader in;
+		List<Long> positions;
+		final int[] pending = new int[BATCH];	// indices of the requests in flight
+		int pendingCount;
+		int pendingBytes;
+
+		Node(InetSocketAddress address) throws IOException {
+			this.address = address;
+			this.channel = SocketChannel.open(address);
+			channel.socket().setTcpNoDelay(true);
+			if (channel.socket().getSendBufferSize() < BATCH_BYTES) {
+				channel.socket().setSendBufferSize(BATCH_BYTES);
+			}
+			this.out = new Snapshot.Writer(channel, Snapshot.PARTITION_PROTOCOL);
+			out.flush();	// our header first, or both ends wait on each other
+			this.in = new Snapshot.Reader(channel, Snapshot.PARTITION_PROTOCOL);
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+
+		/**
+		 * Closes the connection while already failing, so that its further use fails too
+		 */
+		void abandon() {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				/* the failure being reported matters more */
+			}
+		}
+	}
+
+	/**
+	 * Key as stored by a server: the encoded bytes, compared by content
+	 */
+	private static class Key {
+		final byte[] bytes;
+		final int hashCode;
+
+		Key(byte[] bytes) {
+			this.bytes = bytes;
+			this.hashCode = Arrays.hashCode(bytes) & 0x7FFFFFFF;	// MyHashMap needs it non-negative
+		}
+
+		public boolean equals(Object other) {
+			return (other instanceof Key) && Arrays.equals(bytes, ((Key) other).bytes);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/**
+	 * Server holding one partition in a MyHashMap, a thread per connection
+	 */
+	static class Server {
+		private final MyHashMap<Key, byte[]> map = new MyHashMap<Key, byte[]>();
+		private final ServerSocketChannel listener;
+
+		Server(int port) throws IOException {
+			listener = ServerSocketChannel.open();
+			listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		}
+
+		int port() throws IOException {
+			return ((InetSocketAddress) listener.getLocalAddress()).getPort();
+		}
+
+		void serve() throws IOException {
+			while (true) {
+				final SocketChannel channel = listener.accept();
+				channel.socket().setTcpNoDelay(true);
+				if (channel.socket().getReceiveBufferSize() < BATCH_BYTES) {
+					channel.socket().setReceiveBufferSize(BATCH_BYTES);
+				}
+				Thread thread = new Thread(() -> {
+					try (SocketChannel connection = channel) {
+						handle(connection);
+					}
+					catch (IOException e) {
+						/* client went away or broke the protocol, its connection is dropped */
+					}
+				});
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+
+		private void handle(SocketChannel channel) throws IOException {
+			Snapshot.Reader in = new Snapshot.Reader(channel, Snapshot.PARTITION_PROTOCOL);
+			Snapshot.Writer out = new Snapshot.Writer(channel, Snapshot.PARTITION_PROTOCOL);
+			out.flush();
+			while (true) {
+				int op = in.readVarInt();
+				switch (op) {
+				case SYNC:
+					out.flush();
+					break;
+				case GET:
+				case REMOVE: {
+					Key key = new Key(in.read(Snapshot.BYTES));
+					byte[] value;
+					synchronized (map) {
+						value = (op == GET)? map.get(key): map.remove(key);
+					}
+					writeOptional(out, value);
+					break;
+				}
+				case PUT: {
+					Key key = new Key(in.read(Snapshot.BYTES));
+					byte[] value = in.read(Snapshot.BYTES);
+					boolean added;
+					synchronized (map) {
+						int before = map.size();
+						map.put(key, value);
+						added = map.size() > before;
+					}
+					out.writeVarInt(added? 1: 0);
+					break;
+				}
+				case SIZE:
+					synchronized (map) {
+						out.writeVarInt(map.size());
+					}
+					break;
+				case EXTRACT:
+				case DROP: {
+					long[][] ranges = new long[in.readVarInt()][];
+					for (int i = 0; i < ranges.length; i++) {
+						ranges[i] = new long[] {in.readVarLong(), in.readVarLong()};
+					}
+					List<MyHashMap.Entry<Key, byte[]>> matching = new ArrayList<MyHashMap.Entry<Key, byte[]>>();
+					synchronized (map) {
+						for (MyHashMap.Entry<Key, byte[]> entry: map.asList()) {
+							if (inRanges(hash(entry.key.bytes), ranges)) {
+								matching.add(entry);
+							}
+						}
+						if (op == DROP) {
+							for (MyHashMap.Entry<Key, byte[]> entry: matching) {
+								map.remove(entry.key);
+							}
+						}
+					}
+					out.writeVarInt(matching.size());
+					if (op == EXTRACT) {
+						for (MyHashMap.Entry<Key, byte[]> entry: matching) {
+							out.write(entry.key.bytes, Snapshot.BYTES);
+							out.write(entry.value, Snapshot.BYTES);
+						}
+					}
+					break;
+				}
+				default:
+					throw new IOException("Unknown op " + op);
+				}
+			}
+		}
+
+		private static void writeOptional(Snapshot.Writer out, byte[] value) throws IOException {
+			if (value == null) {
+				out.writeVarInt(0);
+			}
+			else {
+				out.writeVarInt(1);
+				out.write(value, Snapshot.BYTES);
+			}
+		}
+	}
+
+	/**
+	 * Starts a server process for the demo, which reports its port on stdout
+	 */
+	private static Process spawnServer() throws IOException {
+		String java = System.getProperty("java.home") + "/bin/java";
+		return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				"PartitionedMap", "server").redirectError(ProcessBuilder.Redirect.INHERIT).start();
+	}
+
+	private static InetSocketAddress awaitPort(Process process) throws IOException {
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		String line = reader.readLine();
+		if (line == null) {
+			throw new IOException("server exited before listening");
+		}
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(line.trim()));
+	}
+
+	/**
+	 * Main method
+	 * 	"server [port]" runs a server on the loopback interface, printing its port
+	 * 	without arguments, runs a demo over several server processes on this machine
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals("server")) {
+			Server server = new Server((args.length > 1)? Integer.parseInt(args[1]): 0);
+			System.out.println(server.port());
+			System.out.flush();
+			server.serve();
+			return;
+		}
+
+		int servers = 4;
+		int n = 200000;
+		List<Process> processes = new ArrayList<Process>();
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		try {
+			for (int i = 0; i < servers; i++) {
+				processes.add(spawnServer());
+			}
+			for (Process process: processes) {
+				addresses.add(awaitPort(process));
+			}
+			PartitionedMap<Integer, String> map =
+					new PartitionedMap<Integer, String>(Snapshot.INTEGER, Snapshot.STRING, 128);
+			for (int i = 0; i < servers - 1; i++) {
+				map.addNode(addresses.get(i));
+			}
+			Integer[] keys = new Integer[n];
+			String[] values = new String[n];
+			Random random = new Random(42);
+			for (int i = 0; i < n; i++) {
+				keys[i] = random.nextInt();
+				values[i] = "v" + keys[i];
+			}
+
+			/* one round trip per request against batched and pipelined requests */
+			int single = 20000;
+			long start = System.nanoTime();
+			for (int i = 0; i < single; i++) {
+				map.put(keys[i], values[i]);
+			}
+			long singleNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			map.putAll(keys, values);
+			long batchedNanos = System.nanoTime() - start;
+			System.out.printf("put: %.0f ns/key, putAll: %.0f ns/key%n",
+					singleNanos / (double) single, batchedNanos / (double) n);
+
+			System.out.println(servers - 1 + " servers: " + map.distribution());
+			start = System.nanoTime();
+			map.addNode(addresses.get(servers - 1));
+			System.out.println("joined in " + (System.nanoTime() - start) / 1000000 + "ms: "
+					+ map.distribution());
+			System.out.println("all present after join: " + verify(map, keys, values));
+			start = System.nanoTime();
+			map.removeNode(addresses.get(0));
+			System.out.println("left in " + (System.nanoTime() - start) / 1000000 + "ms: "
+					+ map.distribution());
+			System.out.println("all present after leave: " + verify(map, keys, values)
+					+ ", size " + map.size() + ", get(1): " + map.get(1)
+					+ ", remove(" + keys[0] + "): " + map.remove(keys[0]) + ", size " + map.size());
+			map.close();
+		}
+		finally {
+			for (Process process: processes) {
+				process.destroy();
+			}
+		}
+	}
+
+	private static boolean verify(PartitionedMap<Integer, String> map, Integer[] keys, String[] values)
+			throws IOException {
+		String[] found = new String[keys.length];
+		map.getAll(keys, found);
+		return Arrays.equals(found, values);
+	}
+}
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Implementation of a radix heap, a min heap for monotone non-negative long keys
+ * 	Made for workloads where keys never go below the last key polled, as in
+ * 	Dijkstra's algorithm with non-negative edge weights, or event simulation
+ * 	Items sit in 65 buckets by the highest bit in which their key differs from
+ * 	the last polled key: bucket 0 holds keys equal to it, bucket i keys differing
+ * 	first at bit i - 1
+ * 	When bucket 0 runs empty, the lowest non-empty bucket is emptied into the
+ * 	lower buckets around its minimum, each item moving down at least one bucket
+ * 	insertion is done in O[1]
+ * 	poll is done in O[log (C)] amortised, C being the largest key, with no comparisons
+ * 	between items at all
+ * 	Unlike MyHeap it is ordered by the key passed to offer, smallest first
+ */
+
+/**
+ * @author Jin Zhe
+ * @param <V>	type of the values stored with the keys
+ */
+class RadixHeap <V> {
+	private static final int BUCKETS = 65;
+	private final long[][] keys = new long[BUCKETS][];
+	private final Object[][] values = new Object[BUCKETS][];
+	private final int[] counts = new int[BUCKETS];
+	private long last;	// last key polled, no key offered may be smaller
+	private int size;
+
+	public RadixHeap() {
+		for (int i = 0; i < BUCKETS; i++) {
+			keys[i] = new long[4];
+			values[i] = new Object[4];
+		}
+	}
+
+	/**
+	 * Inserts value with the given key
+	 * O(1)
+	 * @param key	at least the last key polled (at least 0 at first)
+	 */
+	public void offer(long key, V value) {
+		if (key < last) {
+			throw new IllegalArgumentException("key " + key + " below the last key polled " + last);
+		}
+		add(bucket(key), key, value);
+		size++;
+	}
+
+	private int bucket(long key) {
+		return (key == last)? 0: 64 - Long.numberOfLeadingZeros(key ^ last);
+	}
+
+	private void add(int bucket, long key, Object value) {
+		int count = counts[bucket];
+		if (count == keys[bucket].length) {
+			keys[bucket] = Arrays.copyOf(keys[bucket], count * 2);
+			values[bucket] = Arrays.copyOf(values[bucket], count * 2);
+		}
+		keys[bucket][count] = key;
+		values[bucket][count] = value;
+		counts[bucket] = count + 1;
+	}
+
+	/**
+	 * Retrieves and removes the value with the smallest key
+	 * @return	value or null if heap is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public V poll() {
+		if (size == 0) {
+			return null;
+		}
+		if (counts[0] == 0) {
+			redistribute();
+		}
+		int i = --counts[0];
+		V value = (V) values[0][i];
+		values[0][i] = null;
+		size--;
+		return value;
+	}
+
+	/**
+	 * Retrieves, but does not remove, the value with the smallest key
+	 * @return	value or null if heap is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public V peek() {
+		if (size == 0) {
+			return null;
+		}
+		if (counts[0] == 0) {
+			redistribute();
+		}
+		return (V) values[0][counts[0] - 1];
+	}
+
+	/**
+	 * @return	smallest key, i.e. the key of peek()
+	 * @throws	IllegalStateException if heap is empty
+	 */
+	public long peekKey() {
+		if (size == 0) {
+			throw new IllegalStateException("empty heap");
+		}
+		if (counts[0] == 0) {
+			redistribute();
+		}
+		return last;
+	}
+
+	/**
+	 * Empties the lowest non-empty bucket into lower ones around its minimum,
+	 * which becomes the new last key
+	 */
+	private void redistribute() {
+		int b = 1;
+		while (counts[b] == 0) {
+			b++;
+		}
+		long[] bucketKeys = keys[b];
+		Object[] bucketValues = values[b];
+		int count = counts[b];
+		long min = bucketKeys[0];
+		for (int i = 1; i < count; i++) {
+			min = Math.min(min, bucketKeys[i]);
+		}
+		last = min;
+		counts[b] = 0;
+		for (int i = 0; i < count; i++) {
+			add(bucket(bucketKeys[i]), bucketKeys[i], bucketValues[i]);	// always below b
+			bucketValues[i] = null;
+		}
+	}
+
+	/**
+	 * Getter for current heap size
+	 * @return	the size of heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Main method to test the data structure, see PairingHeap for a Dijkstra benchmark
+	 */
+	public static void main(String[] args) {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.offer(7, "seven");
+		heap.offer(3, "three");
+		heap.offer(1000, "thousand");
+		heap.offer(3, "three again");
+		System.out.println("Peek: " + heap.peek() + " (key " + heap.peekKey() + ")");
+		System.out.println("Poll: " + heap.poll());
+		System.out.println("Poll: " + heap.poll());
+		heap.offer(5, "five");
+		System.out.println("Poll: " + heap.poll());
+		System.out.println("Poll: " + heap.poll());
+		System.out.println("Poll: " + heap.poll());
+		System.out.println("Poll: " + heap.poll());
+		try {
+			heap.offer(1, "one");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("offer(1): " + e.getMessage());
+		}
+
+		/* random monotone workload checked against a sorted reference */
+		Random random = new Random(1);
+		RadixHeap<Long> checked = new RadixHeap<Long>();
+		long floor = 0;
+		boolean ordered = true;
+		for (int i = 0; i < 1000000; i++) {
+			long key = floor + random.nextInt(1 << 20);
+			checked.offer(key, key);
+			if (i % 3 == 0) {
+				long polled = checked.poll();
+				ordered &= polled >= floor;
+				floor = polled;
+			}
+		}
+		while (!checked.isEmpty()) {
+			long polled = checked.poll();
+			ordered &= polled >= floor;
+			floor = polled;
+		}
+		System.out.println("Monotone random workload polled in order: " + ordered);
+	}
+}
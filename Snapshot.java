@@ -0,0 +1,684 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Compact binary snapshot/restore for the data structures in this repo
+ * 	All values are streamed through a buffered NIO channel
+ * 	Keys and values are converted to bytes by pluggable codecs
+ * 	Layout of every snapshot:
+ * 		magic (4 bytes) | version (1 byte) | kind (1 byte) | payload
+ * 	Payload per kind:
+ * 		AVLTree:	count, then the values in sorted order
+ * 					(restored by a linear time balanced build)
+ * 		MyHashMap:	capacity, count, then per non-empty bucket:
+ * 					bucket index, chain length, key/value pairs
+ * 					(restored straight into its bucket, no rehashing, unless
+ * 					the capacity is out of proportion to the count)
+ * 		MyHeap:		count, then the backing array in heap order
+ * 		MyQueue:	count, then items from first to last
+ * 		MyStack:	count, then items from top to bottom
+ * 		sorted run:	count, then values in sorted order (used by ExternalSorter)
+ * 	The same header also opens each direction of a PartitionedMap connection
+ * 	Integers are written as unsigned varints, every value is length-prefixed
+ * 	Counts and lengths read back are checked against the bytes left when the
+ * 	channel's size is known, and otherwise only allocated for as the bytes arrive
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class Snapshot {
+	private static final int MAGIC = 0x44534E50;	// "DSNP"
+	private static final byte VERSION = 1;
+	private static final byte AVL_TREE = 1;
+	private static final byte HASH_MAP = 2;
+	private static final byte HEAP = 3;
+	private static final byte QUEUE = 4;
+	private static final byte STACK = 5;
+	static final byte SORTED_RUN = 6;	// count, then values in order, see ExternalSorter
+	static final byte PARTITION_PROTOCOL = 7;	// request/response stream, see PartitionedMap
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int PREALLOCATED = 1 << 16;	// items reserved up front for a channel of unknown size
+
+	/**
+	 * Codec converting values to and from bytes
+	 * @param <T>	type of value handled
+	 */
+	public interface Codec<T> {
+		/**
+		 * Writes the value at the buffer's position
+		 * May throw BufferOverflowException, in which case it is retried on a larger buffer
+		 */
+		void encode(T value, ByteBuffer buffer);
+
+		/**
+		 * Reads back a value, consuming all remaining bytes of the buffer
+		 */
+		T decode(ByteBuffer buffer);
+	}
+
+	public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+		public void encode(Integer value, ByteBuffer buffer) {
+			buffer.putInt(value);
+		}
+		public Integer decode(ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+	};
+
+	public static final Codec<Long> LONG = new Codec<Long>() {
+		public void encode(Long value, ByteBuffer buffer) {
+			buffer.putLong(value);
+		}
+		public Long decode(ByteBuffer buffer) {
+			return buffer.getLong();
+		}
+	};
+
+	public static final Codec<String> STRING = new Codec<String>() {
+		public void encode(String value, ByteBuffer buffer) {
+			buffer.put(value.getBytes(StandardCharsets.UTF_8));
+		}
+		public String decode(ByteBuffer buffer) {
+			String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+									  buffer.remaining(), StandardCharsets.UTF_8);
+			buffer.position(buffer.limit());
+			return value;
+		}
+	};
+
+	/**
+	 * Raw bytes, for values already encoded elsewhere
+	 */
+	static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+		public void encode(byte[] value, ByteBuffer buffer) {
+			buffer.put(value);
+		}
+		public byte[] decode(ByteBuffer buffer) {
+			byte[] value = new byte[buffer.remaining()];
+			buffer.get(value);
+			return value;
+		}
+	};
+
+	private Snapshot() {}
+
+	/**
+	 * Writes the AVL tree as its in-order sequence of values
+	 */
+	public static <T extends Comparable<T>> void write(AVLTree<T> tree, Codec<T> codec,
+			WritableByteChannel channel) throws IOException {
+		Writer out = new Writer(channel, AVL_TREE);
+		ArrayList<T> sorted = tree.toSortedList();
+		out.writeVarInt(sorted.size());
+		for (T data: sorted) {
+			out.write(data, codec);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Restores an AVL tree in O[N] via a balanced build from the sorted values
+	 */
+	public static <T extends Comparable<T>> AVLTree<T> readAVLTree(ReadableByteChannel channel,
+			Codec<T> codec) throws IOException {
+		Reader in = new Reader(channel, AVL_TREE);
+		int count = in.readCount(1);
+		ArrayList<T> sorted = new ArrayList<T>(in.preallocated(count));
+		for (int i = 0; i < count; i++) {
+			sorted.add(in.read(codec));
+		}
+		AVLTree<T> tree = new AVLTree<T>();
+		tree.buildFromSorted(sorted);
+		return tree;
+	}
+
+	/**
+	 * Writes the hashmap bucket by bucket so that it can be restored without rehashing
+	 * Note: keys must have a hashcode that is stable across JVMs (e.g. Integer, String)
+	 */
+	public static <K, V> void write(MyHashMap<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec,
+			WritableByteChannel channel) throws IOException {
+		Writer out = new Writer(channel, HASH_MAP);
+		MyHashMap.Entry<K, V>[] table = map.getTable();
+		int count = 0;
+		for (MyHashMap.Entry<K, V> entry: table) {
+			for (; entry != null; entry = entry.next) {
+				count++;
+			}
+		}
+		out.writeVarInt(table.length);
+		out.writeVarInt(count);
+		for (int index = 0; index < table.length; index++) {
+			MyHashMap.Entry<K, V> head = table[index];
+			if (head == null) {
+				continue;
+			}
+			int length = 0;
+			for (MyHashMap.Entry<K, V> entry = head; entry != null; entry = entry.next) {
+				length++;
+			}
+			out.writeVarInt(index);
+			out.writeVarInt(length);
+			for (MyHashMap.Entry<K, V> entry = head; entry != null; entry = entry.next) {
+				out.write(entry.key, keyCodec);
+				out.write(entry.value, valueCodec);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Restores a hashmap with its original capacity, chaining entries straight into their buckets
+	 * A capacity out of proportion to the entries, left by a map grown then emptied, or
+	 * claimed by a corrupt snapshot, is not allocated: the entries are rehashed instead
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static <K, V> MyHashMap<K, V> readHashMap(ReadableByteChannel channel, Codec<K> keyCodec,
+			Codec<V> valueCodec) throws IOException {
+		Reader in = new Reader(channel, HASH_MAP);
+		int capacity = in.readVarInt();
+		int count = in.readCount(2);	// a key and a value length per entry
+		/* varints decode to any int, so sizes and indices are checked before use */
+		if (capacity <= 0) {
+			throw new IOException("Corrupt snapshot: capacity " + capacity);
+		}
+		boolean rehash = capacity > 4L * in.preallocated(count) + 128;
+		MyHashMap.Entry<K, V>[] table = rehash? null: new MyHashMap.Entry[capacity];
+		MyHashMap<K, V> map = rehash? new MyHashMap<K, V>(): null;
+		int restored = 0;
+		int previous = -1;
+		while (restored < count) {
+			int index = in.readVarInt();
+			int length = in.readVarInt();
+			/* buckets were written in increasing order */
+			if (index <= previous || index >= capacity || length <= 0 || length > count - restored) {
+				throw new IOException("Corrupt snapshot: bad bucket " + index);
+			}
+			previous = index;
+			MyHashMap.Entry<K, V> tail = null;
+			for (int i = 0; i < length; i++) {
+				MyHashMap.Entry<K, V> entry =
+						new MyHashMap.Entry<K, V>(in.read(keyCodec), in.read(valueCodec));
+				if (rehash) {
+					map.put(entry.key, entry.value);
+				}
+				else if (tail == null) {
+					table[index] = entry;
+				}
+				else {
+					tail.next = entry;
+				}
+				tail = entry;
+			}
+			restored += length;
+		}
+		return rehash? map: new MyHashMap<K, V>(table, count);
+	}
+
+	/**
+	 * Writes the heap's backing array as is
+	 */
+	public static <T extends Comparable<T>> void write(MyHeap<T> heap, Codec<T> codec,
+			WritableByteChannel channel) throws IOException {
+		Writer out = new Writer(channel, HEAP);
+		out.writeVarInt(heap.size());
+		for (int i = 0; i < heap.size(); i++) {
+			out.write(heap.get(i), codec);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Restores a heap in O[N], the items are already in heap order
+	 */
+	public static <T extends Comparable<T>> MyHeap<T> readHeap(ReadableByteChannel channel,
+			Codec<T> codec) throws IOException {
+		Reader in = new Reader(channel, HEAP);
+		int count = in.readCount(1);
+		ArrayList<T> items = new ArrayList<T>(in.preallocated(count));
+		for (int i = 0; i < count; i++) {
+			items.add(in.read(codec));
+		}
+		return new MyHeap<T>(items);
+	}
+
+	/**
+	 * Writes the queue from first to last
+	 * @param <E>	type the queued items are known to have
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> void write(MyQueue queue, Codec<E> codec,
+			WritableByteChannel channel) throws IOException {
+		Writer out = new Writer(channel, QUEUE);
+		int count = 0;
+		for (MyQueue.Node node = queue.first; node != null; node = node.next) {
+			count++;
+		}
+		out.writeVarInt(count);
+		for (MyQueue.Node node = queue.first; node != null; node = node.next) {
+			out.write((E) node.data, codec);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Restores a queue, preserving the order of its items
+	 */
+	public static <E> MyQueue readQueue(ReadableByteChannel channel,
+			Codec<E> codec) throws IOException {
+		Reader in = new Reader(channel, QUEUE);
+		int count = in.readCount(1);
+		MyQueue queue = new MyQueue();
+		for (int i = 0; i < count; i++) {
+			queue.enqueue(in.read(codec));
+		}
+		return queue;
+	}
+
+	/**
+	 * Writes the stack from top to bottom
+	 * @param <E>	type the stacked items are known to have
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> void write(MyStack stack, Codec<E> codec,
+			WritableByteChannel channel) throws IOException {
+		Writer out = new Writer(channel, STACK);
+		int count = 0;
+		for (MyStack.Node node = stack.top; node != null; node = node.next) {
+			count++;
+		}
+		out.writeVarInt(count);
+		for (MyStack.Node node = stack.top; node != null; node = node.next) {
+			out.write((E) node.data, codec);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Restores a stack, linking nodes top to bottom so no reversal is needed
+	 */
+	public static <E> MyStack readStack(ReadableByteChannel channel,
+			Codec<E> codec) throws IOException {
+		Reader in = new Reader(channel, STACK);
+		int count = in.readCount(1);
+		MyStack stack = new MyStack();
+		MyStack.Node bottom = null;
+		for (int i = 0; i < count; i++) {
+			MyStack.Node node = new MyStack.Node(in.read(codec));
+			if (bottom == null) {
+				stack.top = node;
+			}
+			else {
+				bottom.next = node;
+			}
+			bottom = node;
+		}
+		return stack;
+	}
+
+	/**
+	 * Varints on a ByteBuffer, for other binary formats to share with this one:
+	 * 7 bits per byte, lowest first, the high bit set on every byte but the last
+	 * @return number of bytes putVarInt writes for value
+	 */
+	static int varIntSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	static void putVarInt(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static int getVarInt(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (!buffer.hasRemaining()) {
+				throw new EOFException("Truncated varint");
+			}
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt varint: too long");
+	}
+
+	static long getVarLong(ByteBuffer buffer) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			if (!buffer.hasRemaining()) {
+				throw new EOFException("Truncated varint");
+			}
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt varint: too long");
+	}
+
+	/**
+	 * Buffered writer over a channel
+	 */
+	static class Writer {
+		private final WritableByteChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private ByteBuffer scratch = ByteBuffer.allocate(256);	// holds one encoded value
+
+		Writer(WritableByteChannel channel, byte kind) throws IOException {
+			this.channel = channel;
+			buffer.putInt(MAGIC);
+			buffer.put(VERSION);
+			buffer.put(kind);
+		}
+
+		/**
+		 * Makes sure the buffer has room for n more bytes
+		 */
+		private void ensure(int n) throws IOException {
+			if (buffer.remaining() < n) {
+				flush();
+				if (buffer.capacity() < n) {
+					buffer = ByteBuffer.allocate(n);
+				}
+			}
+		}
+
+		void writeVarInt(int value) throws IOException {
+			ensure(5);
+			putVarInt(buffer, value);
+		}
+
+		void writeVarLong(long value) throws IOException {
+			ensure(10);
+			putVarLong(buffer, value);
+		}
+
+		/**
+		 * @return number of bytes written, length prefix included
+		 */
+		<T> int write(T value, Codec<T> codec) throws IOException {
+			/* encode into scratch first, doubling it until the value fits */
+			while (true) {
+				scratch.clear();
+				try {
+					codec.encode(value, scratch);
+					break;
+				}
+				catch (BufferOverflowException e) {
+					scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+				}
+			}
+			scratch.flip();
+			int length = scratch.remaining();
+			writeVarInt(length);
+			ensure(length);
+			buffer.put(scratch);
+			return varIntSize(length) + length;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Buffered reader over a channel
+	 */
+	static class Reader {
+		private final ReadableByteChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long unread;	// bytes left in the channel past the buffer, -1 if unknown
+
+		Reader(ReadableByteChannel channel, byte kind) throws IOException {
+			this.channel = channel;
+			if (channel instanceof SeekableByteChannel) {
+				SeekableByteChannel file = (SeekableByteChannel) channel;
+				unread = file.size() - file.position();
+			}
+			else {
+				unread = -1;
+			}
+			buffer.flip();	// starts empty
+			ensure(6);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a snapshot");
+			}
+			byte version = buffer.get();
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version);
+			}
+			byte actual = buffer.get();
+			if (actual != kind) {
+				throw new IOException("Snapshot holds kind " + actual + ", expected " + kind);
+			}
+		}
+
+		/**
+		 * Makes sure at least n bytes are buffered
+		 * The buffer grows as bytes arrive, so a corrupt length costs at most twice
+		 * the bytes actually sent
+		 */
+		private void ensure(int n) throws IOException {
+			if (buffer.remaining() >= n) {
+				return;
+			}
+			buffer.compact();
+			while (buffer.position() < n) {
+				if (!buffer.hasRemaining()) {
+					ByteBuffer larger = ByteBuffer.allocate((int) Math.min(n, 2L * buffer.capacity()));
+					buffer.flip();
+					buffer = larger.put(buffer);
+				}
+				int read = channel.read(buffer);
+				if (read < 0) {
+					throw new EOFException("Truncated snapshot");
+				}
+				if (unread >= 0) {
+					unread -= read;
+				}
+			}
+			buffer.flip();
+		}
+
+		/**
+		 * @return bytes left to read, or -1 if the channel's size is unknown
+		 */
+		long remaining() {
+			return (unread < 0)? -1: unread + buffer.remaining();
+		}
+
+		/**
+		 * Reads a count of items taking at least minBytes each, rejecting counts
+		 * the rest of the channel cannot hold when its size is known
+		 */
+		int readCount(int minBytes) throws IOException {
+			int count = readVarInt();
+			long remaining = remaining();
+			if (count < 0 || (remaining >= 0 && (long) count * minBytes > remaining)) {
+				throw new IOException("Corrupt snapshot: count " + count);
+			}
+			return count;
+		}
+
+		/**
+		 * @return how many of count items to allocate room for before reading them:
+		 * 		   all of them if the channel's size vouched for count, else a bounded part
+		 */
+		int preallocated(int count) {
+			return (unread < 0)? Math.min(count, PREALLOCATED): count;
+		}
+
+		/*
+		 * Varints are read a byte at a time rather than with getVarInt, so that
+		 * a stream is never waited on for bytes past the end of a message
+		 */
+		int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				ensure(1);
+				byte b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("Corrupt snapshot: varint too long");
+		}
+
+		long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 70; shift += 7) {
+				ensure(1);
+				byte b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("Corrupt snapshot: varint too long");
+		}
+
+		<T> T read(Codec<T> codec) throws IOException {
+			int length = readVarInt();
+			long remaining = remaining();
+			if (length < 0 || (remaining >= 0 && length > remaining)) {
+				throw new IOException("Corrupt snapshot: value length " + length);
+			}
+			ensure(length);
+			/* restrict the codec to exactly this value's bytes */
+			int limit = buffer.limit();
+			int end = buffer.position() + length;
+			buffer.limit(end);
+			T value;
+			try {
+				value = codec.decode(buffer);
+			}
+			catch (BufferUnderflowException e) {
+				throw new IOException("Corrupt snapshot: value shorter than its type", e);
+			}
+			buffer.limit(limit);
+			buffer.position(end);
+			return value;
+		}
+	}
+
+	/**
+	 * Main method to test the snapshot format
+	 */
+	public static void main(String[] args) throws IOException {
+		final int n = 1000000;
+		java.io.File file = java.io.File.createTempFile("snapshot", ".bin");
+		file.deleteOnExit();
+
+		/* AVL tree: written in order, restored by balanced build */
+		AVLTree<Integer> tree = new AVLTree<Integer>();
+		for (int i = 0; i < n; i++) {
+			tree.insert(i * 7 % n);
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+			channel.truncate(0);
+			write(tree, INTEGER, channel);
+		}
+		long start = System.nanoTime();
+		AVLTree<Integer> restoredTree;
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+			restoredTree = readAVLTree(channel, INTEGER);
+		}
+		System.out.println("AVLTree of " + n + " restored in "
+				+ (System.nanoTime() - start) / 1000000 + "ms, " + file.length() + " bytes, height "
+				+ restoredTree.getHeight() + ", contains 4242: " + restoredTree.contains(4242));
+
+		/* hashmap: restored bucket by bucket */
+		MyHashMap<Integer, String> map = new MyHashMap<Integer, String>();
+		for (int i = 0; i < n; i++) {
+			map.put(i, "v" + i);
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+			channel.truncate(0);
+			write(map, INTEGER, STRING, channel);
+		}
+		start = System.nanoTime();
+		MyHashMap<Integer, String> restoredMap;
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+			restoredMap = readHashMap(channel, INTEGER, STRING);
+		}
+		System.out.println("MyHashMap of " + n + " restored in "
+				+ (System.nanoTime() - start) / 1000000 + "ms, " + file.length() + " bytes, size "
+				+ restoredMap.size() + ", value for 123456: " + restoredMap.get(123456));
+
+		/* heap, queue and stack */
+		MyHeap<Integer> heap = new MyHeap<Integer>();
+		MyQueue queue = new MyQueue();
+		MyStack stack = new MyStack();
+		for (int i = 1; i <= 5; i++) {
+			heap.offer(i);
+			queue.enqueue("q" + i);
+			stack.push("s" + i);
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+			channel.truncate(0);
+			write(heap, INTEGER, channel);
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+			MyHeap<Integer> restoredHeap = readHeap(channel, INTEGER);
+			Integer[] polled = new Integer[restoredHeap.size()];
+			for (int i = 0; i < polled.length; i++) {
+				polled[i] = restoredHeap.poll();
+			}
+			System.out.println("MyHeap polled: " + Arrays.toString(polled));
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+			channel.truncate(0);
+			write(queue, STRING, channel);
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+			MyQueue restoredQueue = readQueue(channel, STRING);
+			System.out.println("MyQueue dequeued: " + restoredQueue.dequeue() + ", "
+					+ restoredQueue.dequeue());
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+			channel.truncate(0);
+			write(stack, STRING, channel);
+		}
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+			MyStack restoredStack = readStack(channel, STRING);
+			System.out.println("MyStack popped: " + restoredStack.pop() + ", " + restoredStack.pop());
+		}
+	}
+}
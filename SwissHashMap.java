@@ -0,0 +1,319 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/*
+ * Open-addressing hash map in the style of SwissTable, matching 16 slots at a time
+ * 	Alongside the key and value arrays sits one control byte per slot:
+ * 		0xxxxxxx	full, holding the low 7 bits of the key's hash (its tag)
+ * 		10000000	empty
+ * 		11111110	deleted (tombstone)
+ * 	The slots are split into groups of 16, and a key is probed group by group from
+ * 	the group chosen by the rest of its hash, visiting the others triangularly
+ * 	Each group's 16 control bytes are two longs, matched against the tag with a few
+ * 	word operations (SIMD within a register) so that keys are compared only in the
+ * 	slots whose tag matches, about 1 in 128 of the others
+ * 	A lookup stops at the first group holding an empty slot
+ * 	Removal leaves a tombstone unless the group still has an empty slot, as then no
+ * 	probe ever went past it; tombstones count towards the load and are cleared by
+ * 	rehashing
+ * 	get, put and remove are done in O[1] expected, at loads up to 7/8
+ * 	Not thread-safe
+ */
+
+/**
+ * @author Jin Zhe
+ * @param <K>	Generic type for key object
+ * @param <V>	Generic type for value object
+ */
+public class SwissHashMap<K, V> {
+	private static final int GROUP = 16;					// slots per group, two control words
+	private static final long EMPTY = 0x80L, DELETED = 0xFEL;
+	private static final long LSB = 0x0101010101010101L;	// low bit of every byte
+	private static final long MSB = 0x8080808080808080L;	// high bit of every byte
+	private long[] control;		// 8 control bytes per word, slot i in byte i % 8 of word i / 8
+	private Object[] keys;
+	private Object[] values;
+	private int groupMask;		// number of groups - 1
+	private int size;
+	private int used;			// full and deleted slots
+	private int maxUsed;		// 7/8 of capacity
+
+	/**
+	 * Constructors
+	 */
+	public SwissHashMap() {
+		this(16);
+	}
+	public SwissHashMap(int expectedSize) {
+		int capacity = GROUP;
+		while (capacity / 8 * 7 < expectedSize) {
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		control = new long[capacity / 8];
+		Arrays.fill(control, EMPTY * LSB);
+		keys = new Object[capacity];
+		values = new Object[capacity];
+		groupMask = capacity / GROUP - 1;
+		size = used = 0;
+		maxUsed = capacity / 8 * 7;
+	}
+
+	/**
+	 * Spreads the hashcode so that both the group index (high bits) and the tag
+	 * (low 7 bits) depend on all of its bits
+	 */
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return a mask with the high bit set in every byte of word equal to tag
+	 * 	(rarely also in the byte above a match, which the key comparison weeds out)
+	 */
+	private static long match(long word, long tag) {
+		long x = word ^ (tag * LSB);
+		return (x - LSB) & ~x & MSB;
+	}
+
+	/**
+	 * @return a mask with the high bit set in every empty byte of word
+	 */
+	private static long matchEmpty(long word) {
+		return word & (~word << 6) & MSB;
+	}
+
+	/**
+	 * @return a mask with the high bit set in every empty or deleted byte of word
+	 */
+	private static long matchFree(long word) {
+		return word & ~(word << 7) & MSB;
+	}
+
+	private void setControl(int slot, long value) {
+		int shift = (slot & 7) << 3;
+		control[slot >>> 3] = (control[slot >>> 3] & ~(0xFFL << shift)) | (value << shift);
+	}
+
+	/**
+	 * @return slot holding key, or -1 if absent
+	 */
+	private int find(Object key, int hash) {
+		long[] control = this.control;
+		long tag = hash & 0x7F;
+		int group = (hash >>> 7) & groupMask;
+		for (int step = 1; ; step++) {
+			long low = control[2 * group], high = control[2 * group + 1];
+			for (long m = match(low, tag); m != 0; m &= m - 1) {
+				int slot = group * GROUP + (Long.numberOfTrailingZeros(m) >>> 3);
+				if (key.equals(keys[slot])) {
+					return slot;
+				}
+			}
+			for (long m = match(high, tag); m != 0; m &= m - 1) {
+				int slot = group * GROUP + 8 + (Long.numberOfTrailingZeros(m) >>> 3);
+				if (key.equals(keys[slot])) {
+					return slot;
+				}
+			}
+			if ((matchEmpty(low) | matchEmpty(high)) != 0) {
+				return -1;
+			}
+			group = (group + step) & groupMask;	// triangular: visits every group
+		}
+	}
+
+	/**
+	 * @return first empty or deleted slot on the probe sequence of hash
+	 */
+	private int findFree(int hash) {
+		int group = (hash >>> 7) & groupMask;
+		for (int step = 1; ; step++) {
+			long m = matchFree(control[2 * group]);
+			if (m != 0) {
+				return group * GROUP + (Long.numberOfTrailingZeros(m) >>> 3);
+			}
+			m = matchFree(control[2 * group + 1]);
+			if (m != 0) {
+				return group * GROUP + 8 + (Long.numberOfTrailingZeros(m) >>> 3);
+			}
+			group = (group + step) & groupMask;
+		}
+	}
+
+	/**
+	 * Puts the given entry into the map, replacing the value of an existing key
+	 */
+	public void put(K key, V value) {
+		int hash = hash(key);
+		int slot = find(key, hash);
+		if (slot >= 0) {
+			values[slot] = value;
+			return;
+		}
+		if (used >= maxUsed) {
+			rehash();
+		}
+		insert(key, value, hash);
+		size++;
+	}
+
+	private void insert(Object key, Object value, int hash) {
+		int slot = findFree(hash);
+		if (((control[slot >>> 3] >>> ((slot & 7) << 3)) & 0xFF) == EMPTY) {
+			used++;	// a reused tombstone was already counted
+		}
+		setControl(slot, hash & 0x7F);
+		keys[slot] = key;
+		values[slot] = value;
+	}
+
+	/**
+	 * Rebuilds the table without tombstones, doubling it unless they made up
+	 * enough of the load that dropping them leaves room
+	 */
+	private void rehash() {
+		long[] oldControl = control;
+		Object[] oldKeys = keys, oldValues = values;
+		int capacity = oldKeys.length;
+		int entries = size;
+		allocate((entries >= capacity / 16 * 7)? capacity * 2: capacity);
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (((oldControl[slot >>> 3] >>> ((slot & 7) << 3)) & 0x80) == 0) {	// full
+				insert(oldKeys[slot], oldValues[slot], hash(oldKeys[slot]));
+			}
+		}
+		size = entries;
+	}
+
+	/**
+	 * Gets the associated value of given key
+	 * @return		Associated value, or null if absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(K key) {
+		int slot = find(key, hash(key));
+		return (slot < 0)? null: (V) values[slot];
+	}
+
+	public boolean containsKey(K key) {
+		return find(key, hash(key)) >= 0;
+	}
+
+	/**
+	 * Removes entry for the given key if present
+	 * @return		Value associated with key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(K key) {
+		int slot = find(key, hash(key));
+		if (slot < 0) {
+			return null;
+		}
+		V value = (V) values[slot];
+		keys[slot] = values[slot] = null;
+		int group = slot / GROUP;
+		if ((matchEmpty(control[2 * group]) | matchEmpty(control[2 * group + 1])) != 0) {
+			setControl(slot, EMPTY);	// no probe went past this group
+			used--;
+		}
+		else {
+			setControl(slot, DELETED);
+		}
+		size--;
+		return value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return number of slots
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Main method: simple tests, then lookups against MyHashMap and java.util.HashMap
+	 * at a moderate and a high load of this map's table
+	 */
+	public static void main(String[] args) {
+		SwissHashMap<Integer, String> map = new SwissHashMap<Integer, String>();
+		map.put(42, "Answer to The Ultimate Question of Life, the Universe, and Everything");
+		map.put(529, "Five hundred and twenty-nine");
+		for (int i = 0; i < 100; i++) {
+			map.put(1000 + i, "filler");	// grows the table a few times
+		}
+		System.out.println("value for key == 42: " + map.get(42));
+		System.out.println("value for key == 1: " + map.get(1));
+		System.out.println("value for key == 42 removed: " + map.remove(42));
+		System.out.println("value for key == 42: " + map.get(42) + ", size " + map.size()
+				+ ", capacity " + map.capacity());
+
+		int capacity = 1 << 21;
+		Random random = new Random(42);
+		for (double load: new double[] {0.5, 0.85}) {
+			int n = (int) (capacity * load);
+			Integer[] keys = new Integer[n];
+			Integer[] misses = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = random.nextInt() & Integer.MAX_VALUE;	// MyHashMap takes abs of hashcodes
+				misses[i] = random.nextInt() & Integer.MAX_VALUE;
+			}
+			for (int round = 0; round < 2; round++) {	// second round is warmed up
+				SwissHashMap<Integer, Integer> swiss = new SwissHashMap<Integer, Integer>(n);
+				MyHashMap<Integer, Integer> mine = new MyHashMap<Integer, Integer>();
+				HashMap<Integer, Integer> hashMap = new HashMap<Integer, Integer>(capacity, 0.9f);
+				long[] nanos = new long[9];
+				long start = System.nanoTime();
+				for (Integer key: keys) swiss.put(key, key);
+				nanos[0] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: keys) mine.put(key, key);
+				nanos[1] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: keys) hashMap.put(key, key);
+				nanos[2] = System.nanoTime() - start;
+				int[] found = new int[6];
+				start = System.nanoTime();
+				for (Integer key: keys) found[0] += (swiss.get(key) != null)? 1: 0;
+				nanos[3] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: keys) found[1] += (mine.get(key) != null)? 1: 0;
+				nanos[4] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: keys) found[2] += (hashMap.get(key) != null)? 1: 0;
+				nanos[5] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: misses) found[3] += (swiss.get(key) != null)? 1: 0;
+				nanos[6] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: misses) found[4] += (mine.get(key) != null)? 1: 0;
+				nanos[7] = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (Integer key: misses) found[5] += (hashMap.get(key) != null)? 1: 0;
+				nanos[8] = System.nanoTime() - start;
+				System.out.printf("load %.2f (%,d keys), ns/op SwissHashMap / MyHashMap / HashMap:"
+						+ " put %.0f / %.0f / %.0f, hit %.0f / %.0f / %.0f, miss %.0f / %.0f / %.0f"
+						+ ", same results: %b%n", swiss.size() / (double) swiss.capacity(), n,
+						nanos[0] / (double) n, nanos[1] / (double) n, nanos[2] / (double) n,
+						nanos[3] / (double) n, nanos[4] / (double) n, nanos[5] / (double) n,
+						nanos[6] / (double) n, nanos[7] / (double) n, nanos[8] / (double) n,
+						swiss.size() == mine.size() && mine.size() == hashMap.size()
+						&& found[0] == found[1] && found[1] == found[2]
+						&& found[3] == found[4] && found[4] == found[5]);
+			}
+		}
+	}
+}
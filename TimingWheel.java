@@ -0,0 +1,425 @@
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Hierarchical hashed timing wheel, for large numbers of timeouts
+ * 	An alternative to keeping timers in a MyHeap keyed by deadline:
+ * 		scheduling and cancellation are done in O[1]
+ * 		each timer is cascaded at most once per level on its way to expiry
+ * 	Time is counted in ticks of a configurable length, a timer fires on the first
+ * 	tick at or after its deadline
+ * 	Level L has wheelSize slots, each spanning wheelSize^L ticks, so the wheels
+ * 	together cover wheelSize^levels ticks. When a lower wheel wraps around, the
+ * 	next slot of the wheel above is cascaded down into it.
+ * 	Timers beyond that horizon either go to a MyHeap overflow (optional) which
+ * 	feeds them into the wheels once they come in range, or are parked in the last
+ * 	slot of the top wheel and re-cascaded until due
+ * 	All structural changes happen on a single driver thread: schedules and
+ * 	cancellations from other threads are queued and applied on the next tick
+ */
+
+/**
+ * @author Jin Zhe
+ */
+public class TimingWheel {
+	private final long tickNanos;
+	private final int wheelBits;		// wheelSize = 2^wheelBits
+	private final int wheelMask;
+	private final int levels;
+	private final long horizon;			// ticks covered by all wheels together
+	private final Timeout[][] buckets;	// [level][slot], each a sentinel of a circular list
+	private final MyHeap<Timeout> overflow;	// far-future timers, null if disabled
+	private final long startNanos;
+	private long currentTick;
+	private int pending;
+
+	/* hand-off from other threads to the driver */
+	private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<Timeout>();
+	private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+	private volatile Thread driver;		// null when driven manually via advance
+	private volatile boolean stopped;
+
+	/**
+	 * Constructor
+	 * @param tick			length of one tick
+	 * @param unit			unit of tick
+	 * @param wheelSize		slots per wheel, a power of 2
+	 * @param levels		number of wheels
+	 * @param heapFallback	true to keep timers beyond the horizon in a MyHeap
+	 */
+	public TimingWheel(long tick, TimeUnit unit, int wheelSize, int levels, boolean heapFallback) {
+		if (tick <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1 || levels < 1
+				|| Integer.numberOfTrailingZeros(wheelSize) * levels > 62) {
+			throw new IllegalArgumentException("bad tick, wheel size or levels");
+		}
+		this.tickNanos = unit.toNanos(tick);
+		this.wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+		this.wheelMask = wheelSize - 1;
+		this.levels = levels;
+		this.horizon = 1L << (wheelBits * levels);
+		this.buckets = new Timeout[levels][wheelSize];
+		for (Timeout[] wheel: buckets) {
+			for (int slot = 0; slot < wheelSize; slot++) {
+				wheel[slot] = new Timeout(this, null, 0);	// sentinel
+			}
+		}
+		this.overflow = heapFallback? new MyHeap<Timeout>(): null;
+		this.startNanos = System.nanoTime();
+		this.currentTick = 0;
+	}
+
+	/**
+	 * Schedules task to run after the given delay
+	 * Safe to call from any thread
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		long delayTicks = (unit.toNanos(delay) + tickNanos - 1) / tickNanos;	// round up
+		return scheduleTicks(task, delayTicks);
+	}
+
+	/**
+	 * Schedules task to run after the given number of ticks, at least one
+	 * Safe to call from any thread
+	 */
+	public Timeout scheduleTicks(Runnable task, long delayTicks) {
+		if (task == null) {
+			throw new NullPointerException("task");
+		}
+		if (onDriverThread()) {
+			Timeout timeout = new Timeout(this, task, currentTick + Math.max(delayTicks, 1));
+			timeout.scheduled = true;
+			pending++;
+			insert(timeout);
+			return timeout;
+		}
+		/* deadline is fixed when the driver picks it up, relative to its tick then */
+		Timeout timeout = new Timeout(this, task, Math.max(delayTicks, 1));
+		incoming.offer(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Places a timer in the wheel (or overflow) matching its distance from now
+	 * O[1] unless it goes to the overflow heap
+	 */
+	private void insert(Timeout timeout) {
+		long delta = timeout.deadline - currentTick;
+		long slotTick = timeout.deadline;
+		if (delta >= horizon) {
+			if (overflow != null) {
+				overflow.offer(timeout);
+				return;
+			}
+			slotTick = currentTick + horizon - 1;	// park it in the farthest slot
+			delta = horizon - 1;
+		}
+		int level = 0;
+		while (delta >= (1L << (wheelBits * (level + 1)))) {
+			level++;
+		}
+		int slot = (int) ((slotTick >>> (wheelBits * level)) & wheelMask);
+		timeout.link(buckets[level][slot]);
+	}
+
+	/**
+	 * Advances the wheel by the given number of ticks, running every expired task
+	 * For driving the wheel manually, i.e. when start has not been called,
+	 * in which case the wheel must only be used from one thread
+	 * @return number of tasks run
+	 */
+	public int advance(long ticks) {
+		int expired = processQueues();
+		for (long i = 0; i < ticks; i++) {
+			expired += tick();
+		}
+		return expired;
+	}
+
+	/**
+	 * Advances the wheel to the tick reached at the given System.nanoTime value
+	 * @return number of tasks run
+	 */
+	public int advanceTo(long nowNanos) {
+		long target = (nowNanos - startNanos) / tickNanos;
+		return advance(Math.max(target - currentTick, 0));
+	}
+
+	/**
+	 * Applies schedules and cancellations handed over by other threads
+	 */
+	private int processQueues() {
+		Timeout timeout;
+		while ((timeout = incoming.poll()) != null) {
+			if (timeout.state == Timeout.PENDING) {
+				timeout.deadline += currentTick;	// delay becomes a deadline
+				timeout.scheduled = true;
+				pending++;
+				insert(timeout);
+			}
+		}
+		while ((timeout = cancelled.poll()) != null) {
+			remove(timeout);
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves time forward by one tick
+	 * @return number of tasks run
+	 */
+	private int tick() {
+		currentTick++;
+		/* feed far-future timers which came within the horizon */
+		while (overflow != null && overflow.size() > 0
+				&& overflow.peek().deadline - currentTick < horizon) {
+			Timeout timeout = overflow.poll();
+			if (timeout.state == Timeout.PENDING) {
+				insert(timeout);
+			}
+		}
+		/* cascade each wheel whose lower wheel just wrapped around */
+		for (int level = 1; level < levels; level++) {
+			int shift = wheelBits * level;
+			if ((currentTick & ((1L << shift) - 1)) != 0) {
+				break;
+			}
+			Timeout head = buckets[level][(int) ((currentTick >>> shift) & wheelMask)];
+			while (head.next != head) {
+				Timeout timeout = head.next;
+				timeout.unlink();
+				insert(timeout);	// lands on a lower level, or back here if parked
+			}
+		}
+		/* expire the current slot of the lowest wheel */
+		int expired = 0;
+		Timeout head = buckets[0][(int) (currentTick & wheelMask)];
+		while (head.next != head) {
+			Timeout timeout = head.next;
+			timeout.unlink();
+			if (Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.EXPIRED)) {
+				pending--;
+				expired++;
+				try {
+					timeout.task.run();
+				}
+				catch (Throwable e) {
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Unlinks a cancelled timer, overflow timers are dropped lazily instead
+	 * Timers not yet picked up from another thread are skipped when they are
+	 */
+	private void remove(Timeout timeout) {
+		if (!timeout.scheduled) {
+			return;
+		}
+		if (timeout.next != null) {
+			timeout.unlink();
+		}
+		pending--;
+	}
+
+	private boolean onDriverThread() {
+		Thread current = driver;
+		return current == null || current == Thread.currentThread();
+	}
+
+	/**
+	 * Starts a daemon thread driving the wheel in real time
+	 */
+	public void start() {
+		Thread thread = new Thread(() -> {
+			while (!stopped) {
+				long next = startNanos + (currentTick + 1) * tickNanos;
+				long wait = next - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(this, wait);
+				}
+				advanceTo(System.nanoTime());
+			}
+		}, "timing-wheel");
+		thread.setDaemon(true);
+		driver = thread;
+		thread.start();
+	}
+
+	/**
+	 * Stops the driver thread, pending timers are left untouched
+	 */
+	public void stop() {
+		stopped = true;
+		Thread thread = driver;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * @return number of scheduled timers neither expired nor cancelled,
+	 * 		   as of the last tick when timers are handed over by other threads
+	 */
+	public int pending() {
+		return pending;
+	}
+
+	/**
+	 * @return ticks elapsed since the wheel was created
+	 */
+	public long currentTick() {
+		return currentTick;
+	}
+
+	/**
+	 * Handle of a scheduled task, also its node in a slot's doubly linked list
+	 * Ordered by deadline in reverse, as MyHeap is a max heap and the overflow
+	 * needs the earliest deadline on top
+	 */
+	public static class Timeout implements Comparable<Timeout> {
+		static final int PENDING = 0, EXPIRED = 1, CANCELLED = 2;
+		static final AtomicIntegerFieldUpdater<Timeout> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimingWheel wheel;
+		private final Runnable task;
+		long deadline;			// in ticks, a delay until picked up by the driver
+		Timeout prev, next;		// null when not in a slot
+		boolean scheduled;		// picked up by the driver, which alone reads and writes it
+		volatile int state;
+
+		Timeout(TimingWheel wheel, Runnable task, long deadline) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+			if (task == null) {
+				prev = next = this;	// sentinel of an empty list
+			}
+		}
+
+		/**
+		 * Cancels the task if it has not run yet, O[1]
+		 * @return true if this call cancelled it
+		 */
+		public boolean cancel() {
+			if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+				return false;
+			}
+			if (wheel.onDriverThread()) {
+				wheel.remove(this);
+			}
+			else {
+				wheel.cancelled.offer(this);
+			}
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state == EXPIRED;
+		}
+
+		private void link(Timeout head) {
+			prev = head.prev;
+			next = head;
+			head.prev.next = this;
+			head.prev = this;
+		}
+
+		private void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = next = null;
+		}
+
+		public int compareTo(Timeout other) {
+			return Long.compare(other.deadline, deadline);
+		}
+	}
+
+	/**
+	 * Main method to test the wheel and benchmark it against a MyHeap of deadlines
+	 * 	args[0]: number of timers (default 1,000,000)
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		/* real-time driver */
+		TimingWheel realtime = new TimingWheel(1, TimeUnit.MILLISECONDS, 64, 4, true);
+		realtime.start();
+		final long begin = System.nanoTime();
+		final long[] firedAfter = new long[1];
+		realtime.schedule(() -> firedAfter[0] = System.nanoTime() - begin, 50, TimeUnit.MILLISECONDS);
+		Timeout never = realtime.schedule(() -> System.out.println("should not run"),
+				30, TimeUnit.MILLISECONDS);
+		never.cancel();
+		Thread.sleep(200);
+		realtime.stop();
+		System.out.println("50ms timer fired after " + firedAfter[0] / 1000000 + "ms, cancelled: "
+				+ never.isCancelled());
+
+		/* benchmark: schedule n timers, cancel half, run them all to expiry */
+		int n = (args.length > 0)? Integer.parseInt(args[0]): 1000000;
+		long maxDelay = 1L << 20;	// ~17 minutes of 1ms ticks
+		long[] delays = new long[n];
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++) {
+			delays[i] = 1 + (long) (random.nextDouble() * maxDelay);
+		}
+		for (int round = 0; round < 2; round++) {	// second round is warmed up
+			final int[] fired = {0};
+			Runnable task = () -> fired[0]++;
+
+			long start = System.nanoTime();
+			TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 256, 3, true);
+			Timeout[] timeouts = new Timeout[n];
+			for (int i = 0; i < n; i++) {
+				timeouts[i] = wheel.scheduleTicks(task, delays[i]);
+			}
+			long scheduled = System.nanoTime();
+			for (int i = 0; i < n; i += 2) {
+				timeouts[i].cancel();
+			}
+			long cancelled = System.nanoTime();
+			wheel.advance(maxDelay + 1);
+			long end = System.nanoTime();
+			System.out.printf("TimingWheel: schedule %.0f ns, cancel %.0f ns, run all %d ms, fired %d%n",
+					(scheduled - start) / (double) n, (cancelled - scheduled) / (n / 2.0),
+					(end - cancelled) / 1000000, fired[0]);
+
+			/* heap keyed by deadline, cancellation by lazy deletion */
+			fired[0] = 0;
+			start = System.nanoTime();
+			MyHeap<Timeout> heap = new MyHeap<Timeout>();
+			for (int i = 0; i < n; i++) {
+				timeouts[i] = new Timeout(null, task, delays[i]);
+				heap.offer(timeouts[i]);
+			}
+			scheduled = System.nanoTime();
+			for (int i = 0; i < n; i += 2) {
+				timeouts[i].state = Timeout.CANCELLED;
+			}
+			cancelled = System.nanoTime();
+			for (long now = 1; now <= maxDelay && heap.size() > 0; now++) {
+				while (heap.size() > 0 && heap.peek().deadline <= now) {
+					Timeout timeout = heap.poll();
+					if (timeout.state == Timeout.PENDING) {
+						timeout.task.run();
+					}
+				}
+			}
+			end = System.nanoTime();
+			System.out.printf("MyHeap:      schedule %.0f ns, cancel %.0f ns, run all %d ms, fired %d%n",
+					(scheduled - start) / (double) n, (cancelled - scheduled) / (n / 2.0),
+					(end - cancelled) / 1000000, fired[0]);
+		}
+	}
+}